@@ -0,0 +1,119 @@
+#!/usr/bin/env bash
+# Builds an instrumented native image, trains it with the Rinha traffic mix against the docker-compose Cassandra,
+# builds the PGO binary from the collected profile and compares startup, peak RSS and latency of the
+# JIT, native and PGO native builds. Needs Oracle GraalVM 21 (--pgo is not available on Community Edition) and Docker.
+set -euo pipefail
+
+PORT=${PORT:-8080}
+RPS=${RPS:-500}
+CONCURRENCY=${CONCURRENCY:-64}
+TRAINING_SECONDS=${TRAINING_SECONDS:-60}
+MEASURE_SECONDS=${MEASURE_SECONDS:-30}
+STARTUP_TIMEOUT_SECONDS=${STARTUP_TIMEOUT_SECONDS:-120}
+OUT=target/pgo
+APP=target/rinha-backend-2024q1-javaslow-spring
+
+export SERVER_PORT=$PORT
+export SPRING_CASSANDRA_CONTACT_POINTS=localhost
+export SPRING_CASSANDRA_LOCAL_DATACENTER=datacenter1
+export SPRING_CASSANDRA_KEYSPACE_NAME=rinha
+
+mkdir -p $OUT
+
+docker compose up -d cassandra
+until docker exec rinha_cassandra cqlsh -e "SELECT * FROM rinha.accounts" > /dev/null 2>&1; do
+  echo "waiting for cassandra"
+  sleep 5
+done
+
+./mvnw -q -DskipTests test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=$OUT/classpath.txt
+LOAD_CLASSPATH=target/test-classes:target/classes:$(cat $OUT/classpath.txt)
+
+load() {
+  java -cp "$LOAD_CLASSPATH" com.example.rinha.LoadGenerator "http://localhost:$PORT" "$RPS" "$CONCURRENCY" "$1"
+}
+
+reset() {
+  docker exec rinha_cassandra cqlsh -e "TRUNCATE rinha.transactions; TRUNCATE rinha.accounts_balance; TRUNCATE rinha.balance_snapshots;"
+}
+
+# starts "$@" and waits for /health; leaves the pid in $PID and the startup time in ms in $STARTUP.
+# Fails if the process exits or is not UP within STARTUP_TIMEOUT_SECONDS.
+start() {
+  local begin deadline
+  begin=$(date +%s%N)
+  deadline=$(( $(date +%s) + STARTUP_TIMEOUT_SECONDS ))
+  "$@" > $OUT/app.log 2>&1 &
+  PID=$!
+  until curl --silent --fail "localhost:$PORT/health" | grep -q UP; do
+    if ! kill -0 "$PID" 2>/dev/null; then
+      echo "$1 exited before reporting UP, see $OUT/app.log" >&2
+      exit 1
+    fi
+    if (( $(date +%s) > deadline )); then
+      echo "$1 not UP after ${STARTUP_TIMEOUT_SECONDS}s, see $OUT/app.log" >&2
+      kill -TERM "$PID" || true
+      exit 1
+    fi
+    sleep 0.05
+  done
+  STARTUP=$(( ($(date +%s%N) - begin) / 1000000 ))
+}
+
+peak_rss_mb() {
+  echo $(( $(grep VmHWM "/proc/$PID/status" | awk '{print $2}') / 1024 ))
+}
+
+stop() {
+  kill -TERM "$PID"
+  wait "$PID" || true
+}
+
+# 1. instrumented binary, trained with the traffic mix; the profile is written on shutdown
+./mvnw -q -Pnative,native-instrumented -DskipTests package
+reset
+start ./$APP-instrumented
+load "$TRAINING_SECONDS" > $OUT/training.txt
+stop
+if [[ ! -s default.iprof ]]; then
+  echo "the instrumented binary wrote no default.iprof, see $OUT/app.log" >&2
+  exit 1
+fi
+mv default.iprof $OUT/default.iprof
+
+# 2. plain and PGO native binaries
+./mvnw -q -Pnative -DskipTests package
+cp $APP $OUT/native
+./mvnw -q -Pnative,native-pgo -DskipTests package -Dpgo.profile="$PWD/$OUT/default.iprof"
+cp $APP $OUT/native-pgo
+./mvnw -q -DskipTests package
+
+# 3. comparison
+{
+  echo "# JIT vs native vs PGO native"
+  echo
+  echo "$(date -u +%Y-%m-%dT%H:%M:%SZ), $RPS req/s, $CONCURRENCY connections, ${MEASURE_SECONDS}s per build"
+  echo
+} > $OUT/report.md
+for build in jit native native-pgo; do
+  reset
+  case $build in
+    jit) start java -Xmx40m -jar target/rinha-backend-2024q1-javaslow-spring-*.jar ;;
+    *) start $OUT/$build ;;
+  esac
+  {
+    echo "## $build"
+    echo
+    echo "startup: ${STARTUP} ms"
+    echo
+    echo '```'
+    load "$MEASURE_SECONDS"
+    echo '```'
+    echo
+    echo "peak RSS: $(peak_rss_mb) MB"
+    echo
+  } >> $OUT/report.md
+  stop
+done
+
+cat $OUT/report.md
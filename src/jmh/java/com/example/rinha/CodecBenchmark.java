@@ -0,0 +1,89 @@
+package com.example.rinha;
+
+import com.example.rinha.codec.RinhaJsonEncoder;
+import com.example.rinha.codec.TransactionRequestDecoder;
+import com.example.rinha.dto.BalanceResponse;
+import com.example.rinha.dto.TransactionRequest;
+import com.example.rinha.dto.TransactionResponse;
+import com.example.rinha.model.Transaction;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    private static final ResolvableType REQUEST_TYPE = ResolvableType.forClass(TransactionRequest.class);
+    private final TransactionRequestDecoder decoder = new TransactionRequestDecoder();
+    private final RinhaJsonEncoder encoder = new RinhaJsonEncoder();
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+    private byte[] validRequest;
+    private byte[] invalidRequest;
+    private TransactionResponse transactionResponse;
+    private BalanceResponse balanceResponse;
+
+    @Setup
+    public void setUp() {
+        validRequest = "{\"valor\": 1000, \"tipo\": \"c\", \"descricao\": \"descricao\"}".getBytes(StandardCharsets.UTF_8);
+        invalidRequest = "{\"valor\": 1.2, \"tipo\": \"d\", \"descricao\": \"devolve\"}".getBytes(StandardCharsets.UTF_8);
+        transactionResponse = new TransactionResponse(100000, -9098L);
+        var now = Instant.now();
+        var transactions = IntStream.range(0, 10)
+                .mapToObj(i -> new Transaction(1, i % 2 == 0 ? "c" : "d", "descricao", now.minusMillis(i), 1000 + i, now.minusMillis(i).toEpochMilli()))
+                .toList();
+        balanceResponse = new BalanceResponse(new BalanceResponse.Balance(-9098L, now, 100000), transactions);
+    }
+
+    @Benchmark
+    public TransactionRequest decodeValidRequest() {
+        return decoder.decode(DefaultDataBufferFactory.sharedInstance.wrap(validRequest), REQUEST_TYPE, MediaType.APPLICATION_JSON, Map.of());
+    }
+
+    @Benchmark
+    public Object decodeInvalidRequest() {
+        try {
+            return decoder.decode(DefaultDataBufferFactory.sharedInstance.wrap(invalidRequest), REQUEST_TYPE, MediaType.APPLICATION_JSON, Map.of());
+        } catch (BusinessException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public int encodeTransactionResponse() {
+        var buffer = encoder.encodeValue(transactionResponse, bufferFactory, ResolvableType.forClass(TransactionResponse.class), MediaType.APPLICATION_JSON, Map.of());
+        var size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+
+    @Benchmark
+    public int encodeBalanceResponse() {
+        var buffer = encoder.encodeValue(balanceResponse, bufferFactory, ResolvableType.forClass(BalanceResponse.class), MediaType.APPLICATION_JSON, Map.of());
+        var size = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+        return size;
+    }
+}
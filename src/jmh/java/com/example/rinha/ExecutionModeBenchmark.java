@@ -0,0 +1,119 @@
+package com.example.rinha;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.example.rinha.dto.TransactionRequest;
+import com.example.rinha.model.Transaction;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testcontainers.containers.CassandraContainer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive balance store against the virtual-thread blocking mode on the same Cassandra (requires Docker).
+ * Run with {@code -prof gc} to compare allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(16)
+public class ExecutionModeBenchmark {
+    private static final int ACCOUNTS = 5;
+    private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+    private CassandraContainer<?> cassandra;
+    private CqlSession session;
+    private RinhaRepository repository;
+    private BalanceStore balanceStore;
+    private VirtualThreadTransactions virtualThreads;
+
+    @Param({"reactive", "virtual-threads"})
+    public String mode;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cassandra = new CassandraContainer<>("cassandra:latest").withInitScript("schema.cql");
+        cassandra.start();
+        var config = DriverConfigLoader.programmaticBuilder();
+        new CassandraDriverTuning(new CassandraDriverProperties(), (MeterRegistry) null).customize(config);
+        session = CqlSession.builder()
+                .addContactPoint(cassandra.getContactPoint())
+                .withLocalDatacenter(cassandra.getLocalDatacenter())
+                .withConfigLoader(config.build())
+                .build();
+        var metrics = new RinhaMetrics(new SimpleMeterRegistry());
+        var statements = new PreparedStatementCache(session, metrics);
+        var recentTransactions = new RecentTransactions(true);
+        var batcher = new TransactionInsertBatcher(statements, false, null, 0);
+        repository = new RinhaRepository(statements, recentTransactions, batcher, new TransactionBuckets("none"), session, new CassandraHealth(), false, "counter", Duration.ZERO);
+        repository.prepareStatements();
+        balanceStore = new CounterBalanceStore(repository, new AccountSerializer(metrics), metrics,
+                new CounterCoalescer(repository, false, Duration.ofMillis(1), 64));
+        virtualThreads = new VirtualThreadTransactions(new BlockingRinhaRepository(statements, session, new TransactionBuckets("none"), Duration.ZERO), recentTransactions,
+                "counter", false, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        virtualThreads.destroy();
+        session.close();
+        cassandra.stop();
+    }
+
+    @Benchmark
+    public Long apply() {
+        var transaction = transaction();
+        if (mode.equals("virtual-threads")) {
+            return virtualThreads.call(() -> virtualThreads.apply(transaction, Integer.MAX_VALUE)).block();
+        }
+        return balanceStore.apply(transaction, Integer.MAX_VALUE).block();
+    }
+
+    @Benchmark
+    public Long balance() {
+        var accountId = accountId();
+        if (mode.equals("virtual-threads")) {
+            return virtualThreads.call(() -> virtualThreads.balance(accountId)).block();
+        }
+        return balanceStore.balance(accountId).block();
+    }
+
+    @Benchmark
+    public List<Transaction> lastTransactions() {
+        var accountId = accountId();
+        if (mode.equals("virtual-threads")) {
+            return virtualThreads.call(() -> virtualThreads.lastTransactions(accountId)).block();
+        }
+        return repository.findLastTransactionsByAccountId(accountId).collectList().block();
+    }
+
+    private int accountId() {
+        return (int) (clock.get() % ACCOUNTS) + 1;
+    }
+
+    private Transaction transaction() {
+        var millis = clock.incrementAndGet();
+        return new Transaction(new TransactionRequest(1, "c", "bench"), (int) (millis % ACCOUNTS) + 1, Instant.ofEpochMilli(millis));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.TransactionRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class HandlerBenchmark {
+    private RinhaHandler handler;
+
+    @Param({"false", "true"})
+    public boolean coalescing;
+
+    @Setup
+    public void setUp() {
+        var recentTransactions = new RecentTransactions(true);
+        var repository = new InMemoryRinhaRepository(recentTransactions);
+        var metrics = new RinhaMetrics(new SimpleMeterRegistry());
+        var balanceStore = new CounterBalanceStore(repository, new AccountSerializer(metrics), metrics,
+                new CounterCoalescer(repository, coalescing, Duration.ofMillis(1), 64));
+        var accountRegistry = new AccountRegistry(repository, Duration.ofMinutes(1), Duration.ofMinutes(1));
+        accountRegistry.afterPropertiesSet();
+        handler = new RinhaHandler(repository, balanceStore, Optional.empty(), recentTransactions, new TransactionClock(), metrics, accountRegistry,
+                new IdempotencyCache(repository, false, Duration.ofMinutes(10), 0), Optional.empty());
+    }
+
+    @Benchmark
+    public ServerResponse credit() {
+        return handler.handlePostRequest(post("1", new TransactionRequest(10, "c", "credito"))).block();
+    }
+
+    @Benchmark
+    public ServerResponse debitThenCredit() {
+        handler.handlePostRequest(post("2", new TransactionRequest(10, "d", "debito"))).block();
+        return handler.handlePostRequest(post("2", new TransactionRequest(10, "c", "estorno"))).block();
+    }
+
+    /**
+     * Rejections, to compare with {@link #credit()}: a debit over the limit, an unknown account and an account id
+     * that is not a number. A rejected request ends as an error signal mapped by the WebFilter, or as a prebuilt response.
+     */
+    @Benchmark
+    public Object rejectedLimitExceeded() {
+        return rejected(handler.handlePostRequest(post("1", new TransactionRequest(Integer.MAX_VALUE, "d", "debito"))));
+    }
+
+    @Benchmark
+    public Object rejectedUnknownAccount() {
+        return rejected(handler.handlePostRequest(post("6", new TransactionRequest(10, "c", "credito"))));
+    }
+
+    @Benchmark
+    public Object rejectedInvalidAccountId() {
+        return rejected(handler.handlePostRequest(post("x", new TransactionRequest(10, "c", "credito"))));
+    }
+
+    @Benchmark
+    public ServerResponse statement() {
+        return handler.handleGetRequest(MockServerRequest.builder()
+                        .method(HttpMethod.GET)
+                        .pathVariable("accountId", "3")
+                        .build())
+                .block();
+    }
+
+    private static Object rejected(Mono<ServerResponse> response) {
+        return response.cast(Object.class).onErrorResume(BusinessException.class, Mono::just).block();
+    }
+
+    private MockServerRequest post(String accountId, TransactionRequest transactionRequest) {
+        return MockServerRequest.builder()
+                .method(HttpMethod.POST)
+                .pathVariable("accountId", accountId)
+                .body(Mono.just(transactionRequest));
+    }
+}
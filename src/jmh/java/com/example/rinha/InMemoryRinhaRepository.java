@@ -0,0 +1,76 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.KeyPairValue;
+import com.example.rinha.model.Transaction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RinhaRepository} keeping the counters in memory, so the handler can be measured without Cassandra.
+ */
+class InMemoryRinhaRepository extends RinhaRepository {
+    private final Map<Integer, AtomicLong> temporary = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> total = new ConcurrentHashMap<>();
+
+    InMemoryRinhaRepository(RecentTransactions recentTransactions) {
+        super(null, recentTransactions, null, new TransactionBuckets("none"), null, null, false, "counter", Duration.ZERO);
+    }
+
+    @Override
+    public void prepareStatements() {
+    }
+
+    @Override
+    public Flux<Transaction> findLastTransactionsByAccountId(Integer accountId) {
+        return Flux.empty();
+    }
+
+    @Override
+    public Mono<Transaction> saveTransaction(Transaction transaction) {
+        return Mono.just(transaction);
+    }
+
+    @Override
+    public Mono<Boolean> updateTemporaryAccountBalance(long amount, Integer id) {
+        temporary.computeIfAbsent(id, key -> new AtomicLong()).addAndGet(amount);
+        return Mono.just(true);
+    }
+
+    @Override
+    public Mono<Boolean> updateAccountBalance(long amount, Integer id) {
+        total.computeIfAbsent(id, key -> new AtomicLong()).addAndGet(amount);
+        return Mono.just(true);
+    }
+
+    @Override
+    public Mono<Boolean> updateAccountBalances(long amount, Integer id) {
+        temporary.computeIfAbsent(id, key -> new AtomicLong()).addAndGet(amount);
+        total.computeIfAbsent(id, key -> new AtomicLong()).addAndGet(amount);
+        return Mono.just(true);
+    }
+
+    @Override
+    public Mono<KeyPairValue<Long, Long>> totalBalanceByAccountId(Integer id) {
+        return Mono.just(new KeyPairValue<>(temporary.computeIfAbsent(id, key -> new AtomicLong()).get(),
+                total.computeIfAbsent(id, key -> new AtomicLong()).get()));
+    }
+
+    @Override
+    public Flux<KeyPairValue<Integer, Integer>> findAllAccounts() {
+        return Flux.just(new KeyPairValue<>(1, 100000),
+                new KeyPairValue<>(2, 80000),
+                new KeyPairValue<>(3, 1000000),
+                new KeyPairValue<>(4, 10000000),
+                new KeyPairValue<>(5, 500000));
+    }
+
+    @Override
+    public Flux<KeyPairValue<Integer, Long>> findAllBalances() {
+        return Flux.fromIterable(total.entrySet()).map(entry -> new KeyPairValue<>(entry.getKey(), entry.getValue().get()));
+    }
+}
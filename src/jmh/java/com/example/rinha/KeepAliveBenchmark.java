@@ -0,0 +1,90 @@
+package com.example.rinha;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Round trip of a small POST through a Reactor Netty server tuned by {@link NettyTuning}, with and without
+ * keep-alive on the client side. Prints the connections opened per request at the end of each trial;
+ * run with {@code -prof perfnorm} (Linux) to compare the syscall and cycle cost per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class KeepAliveBenchmark {
+    private static final String BODY = "{\"valor\": 1000, \"tipo\": \"c\", \"descricao\": \"descricao\"}";
+    private static final String RESPONSE = "{\"limite\":100000,\"saldo\":1000}";
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private DisposableServer server;
+    private NettyTuning nettyTuning;
+    private ConnectionProvider connectionProvider;
+    private HttpClient client;
+
+    @Param({"true", "false"})
+    public boolean keepAlive;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        nettyTuning = new NettyTuning(1, "pooled");
+        server = nettyTuning.apply(HttpServer.create())
+                .port(0)
+                .maxKeepAliveRequests(10000)
+                .doOnConnection(connection -> connections.incrementAndGet())
+                .route(routes -> routes.post("/clientes/{accountId}/transacoes", (request, response) -> request.receive()
+                        .aggregate()
+                        .then(response.header("Content-Type", "application/json").sendString(Mono.just(RESPONSE)).then())))
+                .bindNow();
+        connectionProvider = ConnectionProvider.builder("benchmark").maxConnections(16).build();
+        client = HttpClient.create(connectionProvider)
+                .port(server.port())
+                .keepAlive(keepAlive);
+    }
+
+    @Benchmark
+    public String transaction() {
+        requests.incrementAndGet();
+        return client.headers(headers -> headers.set("Content-Type", "application/json"))
+                .post()
+                .uri("/clientes/1/transacoes")
+                .send((request, outbound) -> outbound.sendString(Mono.just(BODY)))
+                .responseContent()
+                .aggregate()
+                .asString()
+                .block();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nkeepAlive=%s: %d connections for %d requests (%.4f per request)%n",
+                keepAlive, connections.get(), requests.get(), (double) connections.get() / Math.max(1, requests.get()));
+        connectionProvider.disposeLater().block();
+        server.disposeNow();
+        nettyTuning.destroy();
+    }
+}
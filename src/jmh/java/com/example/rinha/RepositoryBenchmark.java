@@ -0,0 +1,181 @@
+package com.example.rinha;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.example.rinha.dto.TransactionRequest;
+import com.example.rinha.model.Transaction;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.testcontainers.containers.CassandraContainer;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Repository and balance engine calls against a Cassandra started with Testcontainers (requires Docker).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(8)
+public class RepositoryBenchmark {
+    private static final int ACCOUNT_ID = 1;
+    private static final int INSERT_ACCOUNT_ID = 2;
+    private static final int POST_ACCOUNT_ID = 3;
+    private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong rejected = new AtomicLong();
+    private CassandraContainer<?> cassandra;
+    private CqlSession session;
+    private RinhaRepository repository;
+    private TransactionBuckets buckets;
+    private BalanceStore balanceStore;
+
+    /**
+     * Coalescing only exists for the counter engine, so it is a value of its own instead of a second parameter.
+     */
+    @Param({"counter", "counter-coalescing", "lwt"})
+    public String engine;
+
+    @Param({"none", "hour"})
+    public String bucket;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cassandra = new CassandraContainer<>("cassandra:latest").withInitScript("schema.cql");
+        cassandra.start();
+        var config = DriverConfigLoader.programmaticBuilder();
+        new CassandraDriverTuning(new CassandraDriverProperties(), (MeterRegistry) null).customize(config);
+        session = CqlSession.builder()
+                .addContactPoint(cassandra.getContactPoint())
+                .withLocalDatacenter(cassandra.getLocalDatacenter())
+                .withConfigLoader(config.build())
+                .build();
+        var metrics = new RinhaMetrics(new SimpleMeterRegistry());
+        var statements = new PreparedStatementCache(session, metrics);
+        var recentTransactions = new RecentTransactions(false);
+        var batcher = new TransactionInsertBatcher(statements, false, null, 0);
+        buckets = new TransactionBuckets(bucket);
+        repository = new RinhaRepository(statements, recentTransactions, batcher, buckets, session, new CassandraHealth(), false,
+                engine.equals("lwt") ? "lwt" : "counter", Duration.ZERO);
+        repository.prepareStatements();
+        balanceStore = engine.equals("lwt")
+                ? new LwtBalanceStore(repository, 10)
+                : new CounterBalanceStore(repository, new AccountSerializer(metrics), metrics,
+                new CounterCoalescer(repository, engine.equals("counter-coalescing"), Duration.ofMillis(1), 64));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        var balance = balanceStore.balance(ACCOUNT_ID).block();
+        var sum = repository.sumTransactionsBetween(ACCOUNT_ID, 0, Long.MAX_VALUE).block();
+        System.out.printf("%n[%s/%s] balance=%d sum(transactions)=%d consistent=%s rejected=%d%n",
+                engine, bucket, balance, sum, balance != null && balance.equals(sum), rejected.get());
+        session.close();
+        cassandra.stop();
+    }
+
+    /**
+     * The lwt engine gives up under contention with 8 threads on one account; those rejections are counted
+     * instead of failing the trial.
+     */
+    @Benchmark
+    public Long apply() {
+        return balanceStore.apply(transaction(ACCOUNT_ID), Integer.MAX_VALUE)
+                .onErrorResume(BusinessException.class, e -> {
+                    rejected.incrementAndGet();
+                    return Mono.empty();
+                })
+                .block();
+    }
+
+    @Benchmark
+    public Long balance() {
+        return balanceStore.balance(ACCOUNT_ID).block();
+    }
+
+    @Benchmark
+    public List<Transaction> lastTransactions() {
+        return repository.findLastTransactionsByAccountId(ACCOUNT_ID).collectList().block();
+    }
+
+    @Benchmark
+    public Transaction preparedInsert() {
+        return repository.saveTransaction(transaction(INSERT_ACCOUNT_ID)).block();
+    }
+
+    @Benchmark
+    public Object unpreparedInsert() {
+        var transaction = transaction(INSERT_ACCOUNT_ID);
+        return session.executeAsync(SimpleStatement.newInstance(RinhaRepository.INSERT_TRANSACTION,
+                        transaction.accountId(),
+                        transaction.type(),
+                        transaction.description(),
+                        transaction.date(),
+                        transaction.amount(),
+                        transaction.dateMillis()))
+                .toCompletableFuture()
+                .join();
+    }
+
+    /**
+     * The statements of a POST with the counter engine (balance read, then both counters and the insert), through
+     * the prepared statements of the repository. With {@link #unpreparedPost()} this is the before/after of preparing
+     * the POST path; neither goes through the account lane, so only the statements differ.
+     */
+    @Benchmark
+    public Long preparedPost() {
+        var transaction = transaction(POST_ACCOUNT_ID);
+        return repository.totalBalanceByAccountId(POST_ACCOUNT_ID)
+                .flatMap(balance -> Mono.when(repository.updateTemporaryAccountBalance(1, POST_ACCOUNT_ID),
+                                repository.saveTransaction(transaction),
+                                repository.updateAccountBalance(1, POST_ACCOUNT_ID))
+                        .thenReturn(balance.value() + 1))
+                .block();
+    }
+
+    @Benchmark
+    public Long unpreparedPost() {
+        var transaction = transaction(POST_ACCOUNT_ID);
+        var insert = RinhaRepository.transactionInsert(transaction, buckets, 0);
+        return unprepared(RinhaRepository.SELECT_BALANCE, POST_ACCOUNT_ID)
+                .mapNotNull(AsyncResultSet::one)
+                .map(row -> row.getLong("total"))
+                .defaultIfEmpty(0L)
+                .flatMap(total -> Mono.when(unprepared(RinhaRepository.UPDATE_TEMPORARY_BALANCE, 1L, POST_ACCOUNT_ID),
+                                unprepared(insert.cql(), insert.values()),
+                                unprepared(RinhaRepository.UPDATE_TOTAL_BALANCE, 1L, POST_ACCOUNT_ID))
+                        .thenReturn(total + 1))
+                .block();
+    }
+
+    private Mono<AsyncResultSet> unprepared(String cql, Object... values) {
+        return Mono.fromCompletionStage(() -> session.executeAsync(SimpleStatement.newInstance(cql, values)));
+    }
+
+    private Transaction transaction(int accountId) {
+        return new Transaction(new TransactionRequest(1, "c", "bench"), accountId, Instant.ofEpochMilli(clock.incrementAndGet()));
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.KeyPairValue;
+import com.example.rinha.model.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Authoritative in-process balances for the accounts owned by this instance ("owner mode").
+ * Limits are checked against memory and the accepted transactions are persisted by the {@link WriteBehindQueue}.
+ * With compaction enabled the balances are rebuilt from the latest snapshot and the transactions after it,
+ * which the write-behind queue persists before the balance deltas. In a cluster an account that is not in memory
+ * is only loaded once the other peers have handed it over (see {@link PeerForwarder#handover}), so the new owner
+ * never starts from a balance that misses deltas still queued on the old one; until then it answers 503.
+ */
+@Component
+@ConditionalOnProperty(name = "rinha.owner-mode.enabled", havingValue = "true")
+public class AccountLedger implements InitializingBean {
+    private final Logger log = LoggerFactory.getLogger(AccountLedger.class);
+    private final Map<Integer, Mono<LedgerAccount>> accounts = new ConcurrentHashMap<>();
+    private final BalanceStore balanceStore;
+    private final AccountOwnership accountOwnership;
+    private final WriteBehindQueue writeBehindQueue;
+    private final RecentTransactions recentTransactions;
+    private final BalanceSnapshots balanceSnapshots;
+    private final Optional<PeerForwarder> peerForwarder;
+    private final boolean rebuildFromSnapshots;
+
+    public AccountLedger(BalanceStore balanceStore, AccountOwnership accountOwnership,
+                         WriteBehindQueue writeBehindQueue, RecentTransactions recentTransactions,
+                         BalanceSnapshots balanceSnapshots, Optional<PeerForwarder> peerForwarder,
+                         @Value("${rinha.compaction.enabled:false}") boolean rebuildFromSnapshots) {
+        this.balanceStore = balanceStore;
+        this.accountOwnership = accountOwnership;
+        this.writeBehindQueue = writeBehindQueue;
+        this.recentTransactions = recentTransactions;
+        this.balanceSnapshots = balanceSnapshots;
+        this.peerForwarder = peerForwarder;
+        this.rebuildFromSnapshots = rebuildFromSnapshots;
+    }
+
+    /**
+     * Preloads the owned accounts in the background; an account asked for before its turn is loaded on demand,
+     * and putIfAbsent keeps whichever came first. In a cluster the accounts are loaded on demand only, after
+     * their handover.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        accountOwnership.onChange(() -> {
+            accounts.keySet().removeIf(accountId -> !accountOwnership.owns(accountId));
+            // the new owner waits for the moved accounts to be written, so their queued writes go out now
+            writeBehindQueue.flush().subscribe(null, e -> log.warn("Could not flush after an ownership change", e));
+        });
+        if (peerForwarder.isPresent()) {
+            return;
+        }
+        balanceStore.findAll()
+                .filter(balance -> accountOwnership.owns(balance.key()))
+                .concatMap(balance -> rebuildFromSnapshots
+                        ? balanceSnapshots.rebuild(balance.key()).map(rebuilt -> new KeyPairValue<>(balance.key(), rebuilt))
+                        : Mono.just(balance))
+                .doOnNext(balance -> accounts.putIfAbsent(balance.key(), Mono.just(new LedgerAccount(balance.value()))))
+                .count()
+                .subscribe(loaded -> log.info("Ledger preloaded with {} accounts", loaded),
+                        e -> log.warn("Could not preload the ledger, accounts will be loaded on demand", e));
+    }
+
+    public boolean owns(Integer accountId) {
+        return accountOwnership.owns(accountId);
+    }
+
+    public Mono<Long> balance(Integer accountId) {
+        return account(accountId).map(account -> account.balance.get());
+    }
+
+    public Mono<Long> apply(Transaction transaction, int limit) {
+        return account(transaction.accountId()).flatMap(account -> {
+            var amount = transaction.signedAmount();
+            long current;
+            long updated;
+            do {
+                current = account.balance.get();
+                updated = current + amount;
+                if (BalanceStore.exceedsLimit(transaction, current, limit)) {
+                    return Mono.error(BusinessException.limitExceeded());
+                }
+            } while (!account.balance.compareAndSet(current, updated));
+            recentTransactions.add(transaction);
+            writeBehindQueue.enqueue(transaction);
+            return Mono.just(updated);
+        });
+    }
+
+    private Mono<LedgerAccount> account(Integer accountId) {
+        var account = accounts.get(accountId);
+        if (account != null) {
+            return account;
+        }
+        var balance = rebuildFromSnapshots ? balanceSnapshots.rebuild(accountId) : balanceStore.balance(accountId);
+        var loading = peerForwarder
+                .map(forwarder -> forwarder.handedOver(accountId)
+                        .flatMap(handedOver -> handedOver ? balance : Mono.<Long>error(BusinessException.unavailable())))
+                .orElse(balance)
+                .map(LedgerAccount::new)
+                .cache();
+        var existing = accounts.putIfAbsent(accountId, loading);
+        if (existing != null) {
+            return existing;
+        }
+        return loading.doOnError(e -> accounts.remove(accountId, loading));
+    }
+
+    private static final class LedgerAccount {
+        private final AtomicLong balance;
+
+        LedgerAccount(long balance) {
+            this.balance = new AtomicLong(balance);
+        }
+    }
+}
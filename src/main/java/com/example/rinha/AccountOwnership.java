@@ -0,0 +1,129 @@
+package com.example.rinha;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Which instance owns each account. With rinha.cluster.peers set, accounts are placed on a consistent hash ring
+ * of the peers that are up (each with virtual-nodes points), so when a peer goes down only its accounts move,
+ * and they move back when it returns. Without peers, instance-index and instance-count split the accounts by modulo.
+ */
+@Component
+public class AccountOwnership {
+    private final Logger log = LoggerFactory.getLogger(AccountOwnership.class);
+    private final int instanceIndex;
+    private final int instanceCount;
+    private final String self;
+    private final List<String> peers;
+    private final int virtualNodes;
+    private final Set<String> downPeers = ConcurrentHashMap.newKeySet();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile TreeMap<Integer, String> ring;
+
+    public AccountOwnership(@Value("${rinha.owner-mode.instance-index:0}") int instanceIndex,
+                            @Value("${rinha.owner-mode.instance-count:1}") int instanceCount,
+                            @Value("${rinha.cluster.self:}") String self,
+                            @Value("${rinha.cluster.peers:}") String[] peers,
+                            @Value("${rinha.cluster.virtual-nodes:64}") int virtualNodes) {
+        this.instanceIndex = instanceIndex;
+        this.instanceCount = instanceCount;
+        this.self = self;
+        this.peers = Arrays.stream(peers).map(String::trim).filter(peer -> !peer.isEmpty()).toList();
+        this.virtualNodes = virtualNodes;
+        if (!this.peers.isEmpty() && !this.peers.contains(self)) {
+            throw new IllegalArgumentException("rinha.cluster.self must be one of rinha.cluster.peers: " + self);
+        }
+        this.ring = buildRing();
+    }
+
+    public boolean owns(Integer accountId) {
+        if (peers.isEmpty()) {
+            return Math.floorMod(accountId, instanceCount) == instanceIndex;
+        }
+        return owner(accountId).equals(self);
+    }
+
+    /**
+     * Base URL of the peer owning the account, this instance included.
+     */
+    public String owner(Integer accountId) {
+        var ring = this.ring;
+        var point = ring.ceilingEntry(hash(accountId));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    public String self() {
+        return self;
+    }
+
+    public List<String> peers() {
+        return peers;
+    }
+
+    public boolean isUp(String peer) {
+        return !downPeers.contains(peer);
+    }
+
+    public void markDown(String peer) {
+        if (!peer.equals(self) && downPeers.add(peer)) {
+            log.warn("Peer {} is down, its accounts move to the remaining peers", peer);
+            changed();
+        }
+    }
+
+    public void markUp(String peer) {
+        if (downPeers.remove(peer)) {
+            log.info("Peer {} is up again, its accounts move back", peer);
+            changed();
+        }
+    }
+
+    /**
+     * Called after the owner of some accounts changed, so in-memory state of accounts no longer owned can be dropped.
+     */
+    public void onChange(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    private void changed() {
+        ring = buildRing();
+        listeners.forEach(Runnable::run);
+    }
+
+    private TreeMap<Integer, String> buildRing() {
+        var ring = new TreeMap<Integer, String>();
+        for (String peer : peers) {
+            if (downPeers.contains(peer)) {
+                continue;
+            }
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash((peer + "#" + i).hashCode()), peer);
+            }
+        }
+        if (ring.isEmpty()) {
+            ring.put(0, self);
+        }
+        return ring;
+    }
+
+    /**
+     * Murmur3 finalizer, spreads sequential account ids and peer names over the ring.
+     */
+    private static int hash(int value) {
+        value ^= value >>> 16;
+        value *= 0x85ebca6b;
+        value ^= value >>> 13;
+        value *= 0xc2b2ae35;
+        value ^= value >>> 16;
+        return value;
+    }
+}
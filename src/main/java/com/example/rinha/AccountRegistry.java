@@ -0,0 +1,125 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.KeyPairValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Credit limits of the accounts in rinha.accounts, loaded at startup and refreshed periodically. Startup retries
+ * the first load until load-timeout and then fails, since every request would otherwise answer 404.
+ * Lookups probe an open-addressing int table, so they neither box the account id nor allocate.
+ */
+@Component
+public class AccountRegistry implements InitializingBean, DisposableBean {
+    public static final int UNKNOWN = -1;
+
+    private final Logger log = LoggerFactory.getLogger(AccountRegistry.class);
+    private final RinhaRepository rinhaRepository;
+    private final Duration refreshInterval;
+    private final Duration loadTimeout;
+    private volatile Limits limits = new Limits(List.of());
+    private Disposable refresher;
+
+    public AccountRegistry(RinhaRepository rinhaRepository,
+                           @Value("${rinha.accounts.refresh-interval:30s}") Duration refreshInterval,
+                           @Value("${rinha.accounts.load-timeout:1m}") Duration loadTimeout) {
+        this.rinhaRepository = rinhaRepository;
+        this.refreshInterval = refreshInterval;
+        this.loadTimeout = loadTimeout;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        load().retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(100)).maxBackoff(Duration.ofSeconds(5))
+                        .doBeforeRetry(signal -> log.warn("Could not load the accounts, retrying: {}", signal.failure().toString())))
+                .timeout(loadTimeout)
+                .onErrorMap(TimeoutException.class, e -> new IllegalStateException(
+                        "Could not load the accounts from rinha.accounts within " + loadTimeout, e))
+                .block();
+        refresher = Flux.interval(refreshInterval, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> load().onErrorResume(e -> {
+                    log.warn("Could not refresh the accounts, keeping the {} loaded ones", limits.size, e);
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+    }
+
+    /**
+     * @return the credit limit of the account, or {@link #UNKNOWN} when it does not exist
+     */
+    public int limit(int accountId) {
+        return limits.get(accountId);
+    }
+
+    Mono<Void> load() {
+        return rinhaRepository.findAllAccounts()
+                .collectList()
+                .doOnNext(accounts -> {
+                    limits = new Limits(accounts);
+                    log.debug("Loaded {} accounts", accounts.size());
+                })
+                .then();
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            refresher.dispose();
+        }
+    }
+
+    private static final class Limits {
+        private final int[] keys;
+        private final int[] values;
+        private final boolean[] used;
+        private final int mask;
+        private final int size;
+
+        Limits(List<KeyPairValue<Integer, Integer>> accounts) {
+            var capacity = Integer.highestOneBit(Math.max(accounts.size(), 1) * 2 - 1) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+            size = accounts.size();
+            for (KeyPairValue<Integer, Integer> account : accounts) {
+                var slot = slot(account.key());
+                while (used[slot] && keys[slot] != account.key()) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                keys[slot] = account.key();
+                values[slot] = account.value();
+            }
+        }
+
+        int get(int key) {
+            var slot = slot(key);
+            while (used[slot]) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return UNKNOWN;
+        }
+
+        private int slot(int key) {
+            var hash = key * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.rinha;
+
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the tasks submitted for the same account one after the other without blocking any thread:
+ * each account has a lock-free mailbox and the next task is only subscribed once the previous one terminates.
+ * A task whose subscriber cancels before its turn is skipped, so a request the client gave up on never moves
+ * the balance; one already running is disposed.
+ */
+@Component
+public class AccountSerializer {
+    private final Map<Integer, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    public AccountSerializer(RinhaMetrics metrics) {
+        metrics.gauge("rinha.account.pending", mailboxes, AccountSerializer::totalPending);
+    }
+
+    public <T> Mono<T> submit(Integer accountId, Supplier<Mono<T>> task) {
+        return Mono.create(sink -> {
+            var queued = new Task<>(task, sink);
+            sink.onCancel(queued::cancel);
+            mailboxes.computeIfAbsent(accountId, id -> new Mailbox()).offer(queued);
+        });
+    }
+
+    public int pending(Integer accountId) {
+        var mailbox = mailboxes.get(accountId);
+        return mailbox == null ? 0 : mailbox.wip.get();
+    }
+
+    /**
+     * Tasks queued or running over all accounts; one gauge instead of one per account keeps the series count fixed.
+     */
+    private static double totalPending(Map<Integer, Mailbox> mailboxes) {
+        var pending = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            pending += mailbox.wip.get();
+        }
+        return pending;
+    }
+
+    /**
+     * wip counts the tasks queued or running. drain is a trampoline: a task that completes synchronously
+     * calls done from inside run, which only marks another pass for the loop already draining instead of
+     * recursing into the next task, so a burst on one account cannot grow the stack.
+     */
+    private static final class Mailbox {
+        private final Queue<Task<?>> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicInteger drains = new AtomicInteger();
+        private volatile boolean running;
+
+        void offer(Task<?> task) {
+            queue.offer(task);
+            wip.incrementAndGet();
+            drain();
+        }
+
+        private void drain() {
+            if (drains.getAndIncrement() != 0) {
+                return;
+            }
+            var missed = 1;
+            do {
+                if (!running) {
+                    var task = queue.poll();
+                    if (task != null) {
+                        running = true;
+                        task.run(this::done);
+                    }
+                }
+                missed = drains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void done() {
+            wip.decrementAndGet();
+            running = false;
+            drain();
+        }
+    }
+
+    private static final class Task<T> {
+        private final Supplier<Mono<T>> task;
+        private final MonoSink<T> sink;
+        private volatile boolean cancelled;
+        private volatile Disposable subscription;
+
+        Task(Supplier<Mono<T>> task, MonoSink<T> sink) {
+            this.task = task;
+            this.sink = sink;
+        }
+
+        void run(Runnable done) {
+            if (cancelled) {
+                done.run();
+                return;
+            }
+            subscription = Mono.defer(task)
+                    .doFinally(signal -> done.run())
+                    .subscribe(sink::success, sink::error, sink::success);
+            if (cancelled) {
+                subscription.dispose();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            var subscription = this.subscription;
+            if (subscription != null) {
+                subscription.dispose();
+            }
+        }
+    }
+}
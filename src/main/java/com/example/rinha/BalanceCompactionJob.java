@@ -0,0 +1,86 @@
+package com.example.rinha;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Every interval writes a balance snapshot per account and checks the live balance against the one rebuilt
+ * from the log. A difference is only reported as drift when it is still the same after settle-time,
+ * so in-flight transactions are not mistaken for drift.
+ */
+@Component
+@ConditionalOnProperty(name = "rinha.compaction.enabled", havingValue = "true")
+public class BalanceCompactionJob implements DisposableBean {
+    private final Logger log = LoggerFactory.getLogger(BalanceCompactionJob.class);
+    private final BalanceSnapshots balanceSnapshots;
+    private final BalanceStore balanceStore;
+    private final RinhaMetrics metrics;
+    private final Duration settleTime;
+    private final Disposable compactor;
+
+    public BalanceCompactionJob(BalanceSnapshots balanceSnapshots, BalanceStore balanceStore, RinhaMetrics metrics,
+                                @Value("${rinha.compaction.interval:1m}") Duration interval,
+                                @Value("${rinha.compaction.settle-time:5s}") Duration settleTime) {
+        this.balanceSnapshots = balanceSnapshots;
+        this.balanceStore = balanceStore;
+        this.metrics = metrics;
+        this.settleTime = settleTime;
+        var transactionTtl = balanceSnapshots.transactionTtl();
+        if (!transactionTtl.isZero() && transactionTtl.compareTo(interval.plus(settleTime)) <= 0) {
+            throw new IllegalStateException("rinha.compaction.interval plus settle-time (%s) must be shorter than the transaction ttl (%s)"
+                    .formatted(interval.plus(settleTime), transactionTtl));
+        }
+        this.compactor = Flux.interval(Duration.ZERO, interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> compactAll(), 1)
+                .subscribe();
+    }
+
+    Mono<Void> compactAll() {
+        var cutoffMillis = System.currentTimeMillis() - settleTime.toMillis();
+        return balanceStore.findAll()
+                .concatMap(balance -> balanceSnapshots.compact(balance.key(), cutoffMillis)
+                        .then(verify(balance.key()))
+                        .onErrorResume(IllegalStateException.class, e -> {
+                            log.error(e.getMessage());
+                            return Mono.empty();
+                        })
+                        .onErrorResume(e -> {
+                            log.warn("Could not compact account {}", balance.key(), e);
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+
+    Mono<Void> verify(Integer accountId) {
+        return drift(accountId)
+                .filter(drift -> drift != 0)
+                .flatMap(drift -> Mono.delay(settleTime)
+                        .then(drift(accountId))
+                        .filter(drift::equals))
+                .doOnNext(drift -> {
+                    log.warn("Balance of account {} drifted {} from its transaction log", accountId, drift);
+                    metrics.balanceDrift();
+                })
+                .then();
+    }
+
+    private Mono<Long> drift(Integer accountId) {
+        return Mono.zip(balanceStore.balance(accountId), balanceSnapshots.rebuild(accountId))
+                .map(balances -> balances.getT1() - balances.getT2());
+    }
+
+    @Override
+    public void destroy() {
+        compactor.dispose();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.KeyPairValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Balances derived from the transaction log: the latest row of rinha.balance_snapshots plus the transactions
+ * written after it. Rebuilding an account only reads the transactions since its last compaction.
+ * Snapshots do not expire (each compaction deletes the ones it supersedes) but transactions may, so a snapshot
+ * older than the transaction ttl cannot be trusted anymore: rebuilding or compacting from it fails instead of
+ * silently leaving out the expired transactions.
+ */
+@Component
+public class BalanceSnapshots {
+    private static final KeyPairValue<Long, Long> EMPTY = new KeyPairValue<>(0L, 0L);
+
+    private final RinhaRepository rinhaRepository;
+    private final Duration transactionTtl;
+
+    public BalanceSnapshots(RinhaRepository rinhaRepository, TransactionBuckets buckets,
+                            @Value("${rinha.transactions.ttl:0s}") Duration transactionTtl) {
+        this.rinhaRepository = rinhaRepository;
+        this.transactionTtl = !transactionTtl.isZero() || !buckets.isEnabled() ? transactionTtl : TransactionBuckets.TABLE_TTL;
+    }
+
+    /**
+     * How long transactions are kept, zero when they never expire.
+     */
+    public Duration transactionTtl() {
+        return transactionTtl;
+    }
+
+    public Mono<Long> rebuild(Integer accountId) {
+        return latest(accountId)
+                .flatMap(snapshot -> rinhaRepository.sumTransactionsBetween(accountId, snapshot.key(), Long.MAX_VALUE)
+                        .map(sum -> snapshot.value() + sum));
+    }
+
+    /**
+     * Writes the balance as of cutoffMillis and deletes the snapshots before it. Transactions up to the cutoff
+     * must already be persisted, so the cutoff has to lag behind the clock by more than the slowest insert.
+     */
+    public Mono<Long> compact(Integer accountId, long cutoffMillis) {
+        return latest(accountId)
+                .filter(snapshot -> snapshot.key() < cutoffMillis)
+                .flatMap(snapshot -> rinhaRepository.sumTransactionsBetween(accountId, snapshot.key(), cutoffMillis)
+                        .map(sum -> snapshot.value() + sum))
+                .flatMap(balance -> rinhaRepository.saveBalanceSnapshot(accountId, cutoffMillis, balance)
+                        .then(rinhaRepository.deleteBalanceSnapshotsBefore(accountId, cutoffMillis))
+                        .thenReturn(balance));
+    }
+
+    /**
+     * An account without a snapshot was never compacted and is summed from its first transaction.
+     */
+    private Mono<KeyPairValue<Long, Long>> latest(Integer accountId) {
+        return rinhaRepository.findLatestBalanceSnapshot(accountId)
+                .flatMap(snapshot -> expired(snapshot)
+                        ? Mono.error(new IllegalStateException(("Cannot rebuild the balance of account %d: its latest snapshot"
+                        + " is from %s and the transactions after it may have expired (ttl %s)")
+                        .formatted(accountId, Instant.ofEpochMilli(snapshot.key()), transactionTtl)))
+                        : Mono.just(snapshot))
+                .defaultIfEmpty(EMPTY);
+    }
+
+    private boolean expired(KeyPairValue<Long, Long> snapshot) {
+        return !transactionTtl.isZero() && System.currentTimeMillis() - snapshot.key() >= transactionTtl.toMillis();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.KeyPairValue;
+import com.example.rinha.model.Transaction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Predicate;
+
+/**
+ * Storage engine of the account balances, selected with {@code rinha.balance.engine}.
+ */
+public interface BalanceStore {
+
+    Mono<Long> balance(Integer accountId);
+
+    /**
+     * Checks the limit, persists the transaction and returns the new balance of the account.
+     */
+    Mono<Long> apply(Transaction transaction, int limit);
+
+    /**
+     * Adds an already accepted delta to the balance, used by the write-behind of owner mode. Not idempotent,
+     * so a failed call must not be retried unless the write is known not to have been applied.
+     */
+    Mono<Void> add(Integer accountId, long delta);
+
+    Flux<KeyPairValue<Integer, Long>> findAll();
+
+    /**
+     * Called when the owner of some accounts changed; state kept in memory for the other accounts can no longer
+     * be trusted, since another instance now writes them.
+     */
+    default void retain(Predicate<Integer> accounts) {
+    }
+
+    /**
+     * The limit rule of every engine and of the ledger: a debit is rejected when it would take the balance below
+     * minus the limit.
+     */
+    static boolean exceedsLimit(Transaction transaction, long balance, int limit) {
+        return transaction.type().equals("d") && balance - transaction.amount() < -limit;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.rinha;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.example.rinha.dto.KeyPairValue;
+import com.example.rinha.model.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.rinha.RinhaRepository.INSERT_TRANSACTION_BUCKET;
+import static com.example.rinha.RinhaRepository.SELECT_BALANCE;
+import static com.example.rinha.RinhaRepository.SELECT_LAST_BUCKETED_TRANSACTIONS;
+import static com.example.rinha.RinhaRepository.SELECT_LAST_TRANSACTION_BUCKETS;
+import static com.example.rinha.RinhaRepository.SELECT_LAST_TRANSACTIONS;
+import static com.example.rinha.RinhaRepository.UPDATE_BALANCES;
+
+/**
+ * Synchronous {@link CqlSession#execute} variants of the {@link RinhaRepository} statements used on the hot path,
+ * meant to be called from virtual threads. Shares the prepared statements and the CQL of {@link RinhaRepository}.
+ */
+@Repository
+@ConditionalOnProperty(name = "rinha.execution-mode", havingValue = "virtual-threads")
+public class BlockingRinhaRepository {
+    private final PreparedStatementCache statements;
+    private final CqlSession session;
+    private final TransactionBuckets buckets;
+    private final int transactionTtlSeconds;
+
+    public BlockingRinhaRepository(PreparedStatementCache statements, CqlSession session, TransactionBuckets buckets,
+                                   @Value("${rinha.transactions.ttl:0s}") Duration transactionTtl) {
+        this.statements = statements;
+        this.session = session;
+        this.buckets = buckets;
+        this.transactionTtlSeconds = (int) transactionTtl.toSeconds();
+    }
+
+    public KeyPairValue<Long, Long> totalBalanceByAccountId(Integer id) {
+        var row = execute(SELECT_BALANCE, id).one();
+        return row == null ? new KeyPairValue<>(0L, 0L) : new KeyPairValue<>(row.getLong("temporary"), row.getLong("total"));
+    }
+
+    public void updateAccountBalances(long amount, Integer id) {
+        execute(UPDATE_BALANCES, amount, amount, id);
+    }
+
+    public void saveTransaction(Transaction transaction) {
+        var insert = RinhaRepository.transactionInsert(transaction, buckets, transactionTtlSeconds);
+        execute(insert.cql(), insert.values());
+        if (buckets.isEnabled()) {
+            indexBucket(transaction.accountId(), buckets.bucket(transaction.dateMillis()));
+        }
+    }
+
+    public List<Transaction> findLastTransactionsByAccountId(Integer accountId) {
+        var transactions = new ArrayList<Transaction>(RecentTransactions.CAPACITY);
+        if (!buckets.isEnabled()) {
+            execute(SELECT_LAST_TRANSACTIONS, accountId).forEach(row -> transactions.add(toTransaction(accountId, row)));
+            return transactions;
+        }
+        for (Row bucket : execute(SELECT_LAST_TRANSACTION_BUCKETS, accountId)) {
+            for (Row row : execute(SELECT_LAST_BUCKETED_TRANSACTIONS, accountId, bucket.getInt("bucket"))) {
+                transactions.add(toTransaction(accountId, row));
+                if (transactions.size() == RecentTransactions.CAPACITY) {
+                    return transactions;
+                }
+            }
+        }
+        return transactions;
+    }
+
+    private void indexBucket(Integer accountId, int bucket) {
+        if (buckets.needsIndex(accountId, bucket)) {
+            try {
+                execute(INSERT_TRANSACTION_BUCKET, accountId, bucket);
+            } catch (RuntimeException e) {
+                buckets.indexFailed(accountId, bucket);
+                throw e;
+            }
+        }
+    }
+
+    private Transaction toTransaction(Integer accountId, Row row) {
+        return new Transaction(accountId,
+                row.getString("type"),
+                row.getString("description"),
+                row.getInstant("date"),
+                row.getInt("amount"),
+                row.getLong("dateMillis"));
+    }
+
+    private ResultSet execute(String cql, Object... values) {
+        var statement = statements.prepare(cql).join().bind(values);
+        return session.execute(RinhaRepository.withExecutionProfile(cql, statement));
+    }
+}
@@ -2,13 +2,61 @@ package com.example.rinha;
 
 import org.springframework.http.HttpStatus;
 
+/**
+ * Rejects a request with a status and the reason counted by rinha.rejections. Rejections are ordinary traffic,
+ * so the exception carries no stack trace and the common ones are shared, immutable instances.
+ */
 public class BusinessException extends RuntimeException {
+    public static final String INVALID_PAYLOAD = "invalid-payload";
+    public static final String INVALID_ACCOUNT_ID = "invalid-account-id";
+    public static final String LIMIT_EXCEEDED = "limit-exceeded";
+    public static final String IDEMPOTENCY_KEY_REUSED = "idempotency-key-reused";
+    public static final String IDEMPOTENCY_KEY_IN_FLIGHT = "idempotency-key-in-flight";
+
+    private static final BusinessException INVALID_PAYLOAD_REJECTION = new BusinessException(HttpStatus.UNPROCESSABLE_ENTITY, INVALID_PAYLOAD);
+    private static final BusinessException LIMIT_EXCEEDED_REJECTION = new BusinessException(HttpStatus.UNPROCESSABLE_ENTITY, LIMIT_EXCEEDED);
+    private static final BusinessException IDEMPOTENCY_KEY_REUSED_REJECTION = new BusinessException(HttpStatus.UNPROCESSABLE_ENTITY, IDEMPOTENCY_KEY_REUSED);
+    private static final BusinessException IDEMPOTENCY_KEY_IN_FLIGHT_REJECTION = new BusinessException(HttpStatus.CONFLICT, IDEMPOTENCY_KEY_IN_FLIGHT);
+    private static final BusinessException UNAVAILABLE = new BusinessException(HttpStatus.SERVICE_UNAVAILABLE);
+
     private final HttpStatus httpStatus;
+    private final String reason;
+
     public BusinessException(HttpStatus httpStatus) {
+        this(httpStatus, httpStatus.name().toLowerCase());
+    }
+
+    public BusinessException(HttpStatus httpStatus, String reason) {
+        super(reason, null, false, false);
         this.httpStatus = httpStatus;
+        this.reason = reason;
+    }
+
+    public static BusinessException invalidPayload() {
+        return INVALID_PAYLOAD_REJECTION;
+    }
+
+    public static BusinessException limitExceeded() {
+        return LIMIT_EXCEEDED_REJECTION;
+    }
+
+    public static BusinessException idempotencyKeyReused() {
+        return IDEMPOTENCY_KEY_REUSED_REJECTION;
+    }
+
+    public static BusinessException idempotencyKeyInFlight() {
+        return IDEMPOTENCY_KEY_IN_FLIGHT_REJECTION;
+    }
+
+    public static BusinessException unavailable() {
+        return UNAVAILABLE;
     }
 
     public int getStatusCode() {
         return httpStatus.value();
     }
+
+    public String getReason() {
+        return reason;
+    }
 }
@@ -0,0 +1,130 @@
+package com.example.rinha;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Driver settings under rinha.cql.driver. Each entry of profiles becomes a driver execution profile,
+ * used by {@link RinhaRepository} for the statements of that query class.
+ */
+@ConfigurationProperties("rinha.cql.driver")
+public class CassandraDriverProperties {
+    public static final String BALANCE_READ = "balance-read";
+    public static final String COUNTER_WRITE = "counter-write";
+
+    private int connectionsPerHost = 1;
+    private int maxRequestsPerConnection = 1024;
+    private Duration requestTimeout = Duration.ofSeconds(2);
+    private final Coalescer coalescer = new Coalescer();
+    private final Map<String, Profile> profiles = new LinkedHashMap<>();
+
+    public CassandraDriverProperties() {
+        var balanceRead = new Profile();
+        balanceRead.setConsistency("LOCAL_ONE");
+        balanceRead.setTimeout(Duration.ofMillis(500));
+        balanceRead.setSpeculativeExecutions(2);
+        balanceRead.setSpeculativeDelay(Duration.ofMillis(10));
+        profiles.put(BALANCE_READ, balanceRead);
+        var counterWrite = new Profile();
+        counterWrite.setTimeout(Duration.ofSeconds(1));
+        profiles.put(COUNTER_WRITE, counterWrite);
+    }
+
+    public int getConnectionsPerHost() {
+        return connectionsPerHost;
+    }
+
+    public void setConnectionsPerHost(int connectionsPerHost) {
+        this.connectionsPerHost = connectionsPerHost;
+    }
+
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public Coalescer getCoalescer() {
+        return coalescer;
+    }
+
+    public Map<String, Profile> getProfiles() {
+        return profiles;
+    }
+
+    public static class Coalescer {
+        private int maxRuns = 5;
+        private Duration interval = Duration.ofNanos(10_000);
+
+        public int getMaxRuns() {
+            return maxRuns;
+        }
+
+        public void setMaxRuns(int maxRuns) {
+            this.maxRuns = maxRuns;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+    }
+
+    public static class Profile {
+        private String consistency;
+        private Duration timeout;
+        private int speculativeExecutions;
+        private Duration speculativeDelay = Duration.ofMillis(10);
+
+        public String getConsistency() {
+            return consistency;
+        }
+
+        public void setConsistency(String consistency) {
+            this.consistency = consistency;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        /**
+         * Maximum executions of a request, counting the first one; 0 or 1 disables speculative execution.
+         */
+        public int getSpeculativeExecutions() {
+            return speculativeExecutions;
+        }
+
+        public void setSpeculativeExecutions(int speculativeExecutions) {
+            this.speculativeExecutions = speculativeExecutions;
+        }
+
+        public Duration getSpeculativeDelay() {
+            return speculativeDelay;
+        }
+
+        public void setSpeculativeDelay(Duration speculativeDelay) {
+            this.speculativeDelay = speculativeDelay;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.rinha;
+
+import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverOption;
+import com.datastax.oss.driver.api.core.config.ProgrammaticDriverConfigLoaderBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.cassandra.CqlSessionBuilderCustomizer;
+import org.springframework.boot.autoconfigure.cassandra.DriverConfigLoaderBuilderCustomizer;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Applies {@link CassandraDriverProperties} to the driver configuration and bridges the driver metrics
+ * into the Micrometer registry (cassandra.* meters). An option the user already set, through its
+ * spring.cassandra.* property or a datastax-java-driver.* system property, is left as configured.
+ */
+@Component
+@ImportRuntimeHints(CassandraDriverTuning.DriverHints.class)
+public class CassandraDriverTuning implements DriverConfigLoaderBuilderCustomizer, CqlSessionBuilderCustomizer {
+    private static final String DRIVER_PREFIX = "datastax-java-driver.";
+    private static final Map<DriverOption, String> SPRING_PROPERTIES = Map.of(
+            DefaultDriverOption.REQUEST_TIMEOUT, "spring.cassandra.request.timeout");
+
+    private final Logger log = LoggerFactory.getLogger(CassandraDriverTuning.class);
+    private final CassandraDriverProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Predicate<DriverOption> userSet;
+
+    @Autowired
+    public CassandraDriverTuning(CassandraDriverProperties properties, ObjectProvider<MeterRegistry> meterRegistry,
+                                 Environment environment) {
+        this(properties, meterRegistry.getIfAvailable(), option -> environment.containsProperty(DRIVER_PREFIX + option.getPath())
+                || SPRING_PROPERTIES.containsKey(option) && environment.containsProperty(SPRING_PROPERTIES.get(option)));
+    }
+
+    CassandraDriverTuning(CassandraDriverProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, option -> false);
+    }
+
+    private CassandraDriverTuning(CassandraDriverProperties properties, MeterRegistry meterRegistry, Predicate<DriverOption> userSet) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.userSet = userSet;
+    }
+
+    @Override
+    public void customize(ProgrammaticDriverConfigLoaderBuilder builder) {
+        set(builder, DefaultDriverOption.CONNECTION_POOL_LOCAL_SIZE, option -> builder.withInt(option, properties.getConnectionsPerHost()));
+        set(builder, DefaultDriverOption.CONNECTION_MAX_REQUESTS, option -> builder.withInt(option, properties.getMaxRequestsPerConnection()));
+        set(builder, DefaultDriverOption.REQUEST_TIMEOUT, option -> builder.withDuration(option, properties.getRequestTimeout()));
+        set(builder, DefaultDriverOption.COALESCER_MAX_RUNS, option -> builder.withInt(option, properties.getCoalescer().getMaxRuns()));
+        set(builder, DefaultDriverOption.COALESCER_INTERVAL, option -> builder.withDuration(option, properties.getCoalescer().getInterval()));
+        if (meterRegistry != null && !userSet.test(DefaultDriverOption.METRICS_FACTORY_CLASS)) {
+            // the factory documented by the driver for Micrometer, looked up by its simple name
+            builder.withString(DefaultDriverOption.METRICS_FACTORY_CLASS, "MicrometerMetricsFactory")
+                    .withStringList(DefaultDriverOption.METRICS_SESSION_ENABLED,
+                            List.of("connected-nodes", "cql-requests", "cql-client-timeouts", "bytes-sent", "bytes-received", "throttling.delay"))
+                    .withStringList(DefaultDriverOption.METRICS_NODE_ENABLED,
+                            List.of("pool.open-connections", "pool.in-flight", "pool.available-streams", "cql-messages",
+                                    "speculative-executions", "errors.request.write-timeouts", "errors.request.read-timeouts"));
+        }
+        properties.getProfiles().forEach((name, profile) -> {
+            builder.startProfile(name);
+            if (profile.getConsistency() != null) {
+                builder.withString(DefaultDriverOption.REQUEST_CONSISTENCY, profile.getConsistency());
+            }
+            if (profile.getTimeout() != null) {
+                builder.withDuration(DefaultDriverOption.REQUEST_TIMEOUT, profile.getTimeout());
+            }
+            if (profile.getSpeculativeExecutions() > 1) {
+                builder.withString(DefaultDriverOption.SPECULATIVE_EXECUTION_POLICY_CLASS, "ConstantSpeculativeExecutionPolicy")
+                        .withInt(DefaultDriverOption.SPECULATIVE_EXECUTION_MAX, profile.getSpeculativeExecutions())
+                        .withDuration(DefaultDriverOption.SPECULATIVE_EXECUTION_DELAY, profile.getSpeculativeDelay());
+            }
+            builder.endProfile();
+        });
+    }
+
+    @Override
+    public void customize(CqlSessionBuilder builder) {
+        if (meterRegistry != null) {
+            builder.withMetricRegistry(meterRegistry);
+        }
+    }
+
+    private void set(ProgrammaticDriverConfigLoaderBuilder builder, DriverOption option, Consumer<DriverOption> setter) {
+        if (userSet.test(option)) {
+            log.info("Keeping {} as configured, the rinha.cql.driver value is not applied", option.getPath());
+            return;
+        }
+        setter.accept(option);
+    }
+
+    /**
+     * The driver instantiates the configured policies and metrics factory by reflection. They are named here
+     * instead of referenced, so no internal driver class is compiled against.
+     */
+    static class DriverHints implements RuntimeHintsRegistrar {
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            hints.reflection().registerType(TypeReference.of("com.datastax.oss.driver.internal.metrics.micrometer.MicrometerMetricsFactory"),
+                    MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+            hints.reflection().registerType(TypeReference.of("com.datastax.oss.driver.internal.core.specex.ConstantSpeculativeExecutionPolicy"),
+                    MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.rinha;
+
+import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.NodeState;
+import com.datastax.oss.driver.api.core.metadata.NodeStateListener;
+import com.datastax.oss.driver.api.core.session.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.cassandra.CqlSessionBuilderCustomizer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Health of this replica, kept up to date by driver {@link NodeStateListener} events instead of reading the
+ * session metadata on every probe. Ready (UP) once the statements of the hot path are prepared, the {@link WarmUp}
+ * (when enabled) is over and at least one node is up with open connections. Each state has its response built
+ * in advance, so a probe only writes its body.
+ */
+@Component
+public class CassandraHealth implements NodeStateListener, CqlSessionBuilderCustomizer {
+    private static final Mono<ServerResponse> UP = response(HttpStatus.OK, "UP");
+    private static final Mono<ServerResponse> STARTING = response(HttpStatus.SERVICE_UNAVAILABLE, "STARTING");
+    private static final Mono<ServerResponse> DOWN = response(HttpStatus.SERVICE_UNAVAILABLE, "DOWN");
+
+    private final Logger log = LoggerFactory.getLogger(CassandraHealth.class);
+    private final Set<Node> upNodes = ConcurrentHashMap.newKeySet();
+    private volatile boolean statementsPrepared;
+    private volatile boolean warmingUp;
+    private volatile Mono<ServerResponse> current = STARTING;
+
+    public Mono<ServerResponse> probe() {
+        return current;
+    }
+
+    public boolean isUp() {
+        return current == UP;
+    }
+
+    public void statementsPrepared() {
+        statementsPrepared = true;
+        update();
+    }
+
+    public void warmingUp() {
+        warmingUp = true;
+        update();
+    }
+
+    public void warmedUp() {
+        warmingUp = false;
+        update();
+    }
+
+    @Override
+    public void customize(CqlSessionBuilder builder) {
+        builder.addNodeStateListener(this);
+    }
+
+    @Override
+    public void onSessionReady(Session session) {
+        session.getMetadata().getNodes().values().forEach(node -> {
+            if (node.getState() == NodeState.UP && node.getOpenConnections() > 0) {
+                upNodes.add(node);
+            }
+        });
+        update();
+    }
+
+    @Override
+    public void onAdd(Node node) {
+        if (node.getState() == NodeState.UP) {
+            onUp(node);
+        }
+    }
+
+    @Override
+    public void onUp(Node node) {
+        upNodes.add(node);
+        update();
+    }
+
+    @Override
+    public void onDown(Node node) {
+        upNodes.remove(node);
+        update();
+    }
+
+    @Override
+    public void onRemove(Node node) {
+        onDown(node);
+    }
+
+    @Override
+    public void close() {
+        upNodes.clear();
+        update();
+    }
+
+    private synchronized void update() {
+        var started = statementsPrepared && !warmingUp;
+        var next = upNodes.isEmpty() ? (started ? DOWN : STARTING) : (started ? UP : STARTING);
+        if (next != current) {
+            log.info("health: {} node(s) up, statements prepared: {}, warming up: {}", upNodes.size(), statementsPrepared, warmingUp);
+            current = next;
+        }
+    }
+
+    private static Mono<ServerResponse> response(HttpStatus status, String state) {
+        var body = ("{\"status\":\"" + state + "\"}").getBytes(StandardCharsets.UTF_8);
+        return ServerResponse.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(body.length)
+                .bodyValue(body)
+                .cache();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.rinha;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AIMD limit on the requests in flight: the limit grows by one per window of successful requests while it is
+ * being used, and is multiplied by backoff-ratio (at most once per cooldown) when the backend is overloaded.
+ */
+public class ConcurrencyLimiter {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime());
+    private final int minimum;
+    private final int maximum;
+    private final double backoffRatio;
+    private final long cooldownNanos;
+    private volatile double limit;
+
+    public ConcurrencyLimiter(int initial, int minimum, int maximum, double backoffRatio, long cooldownNanos) {
+        this.limit = initial;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.backoffRatio = backoffRatio;
+        this.cooldownNanos = cooldownNanos;
+    }
+
+    public boolean tryAcquire() {
+        if (inFlight.incrementAndGet() > (int) limit) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public void release(boolean overloaded) {
+        var current = inFlight.getAndDecrement();
+        var currentLimit = limit;
+        if (overloaded) {
+            var now = System.nanoTime();
+            var last = lastDecrease.get();
+            if (now - last > cooldownNanos && lastDecrease.compareAndSet(last, now)) {
+                limit = Math.max(minimum, currentLimit * backoffRatio);
+            }
+        } else if (current * 2 >= currentLimit) {
+            limit = Math.min(maximum, currentLimit + 1 / currentLimit);
+        }
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.rinha;
+
+import com.example.rinha.RinhaMetrics.Stage;
+import com.example.rinha.dto.KeyPairValue;
+import com.example.rinha.model.Transaction;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the balance in the counters of rinha.accounts_balance. Transactions of the same account are checked
+ * one at a time by the {@link AccountSerializer}. With counter coalescing the account is released as soon as
+ * its deltas are queued: while writes are outstanding the next transaction is checked against the balance
+ * expected in memory instead of reading the counters, and the deltas are summed by the {@link CounterCoalescer}.
+ * Once one of those writes fails the expectation is wrong, so the account answers 503 until its outstanding writes
+ * are over and the next transaction reads the counters again.
+ */
+@Component
+@ConditionalOnProperty(name = "rinha.balance.engine", havingValue = "counter", matchIfMissing = true)
+public class CounterBalanceStore implements BalanceStore {
+    private final Map<Integer, ExpectedBalance> expectedBalances = new ConcurrentHashMap<>();
+    private final RinhaRepository rinhaRepository;
+    private final AccountSerializer accountSerializer;
+    private final RinhaMetrics metrics;
+    private final CounterCoalescer counterCoalescer;
+
+    public CounterBalanceStore(RinhaRepository rinhaRepository, AccountSerializer accountSerializer, RinhaMetrics metrics,
+                               CounterCoalescer counterCoalescer) {
+        this.rinhaRepository = rinhaRepository;
+        this.accountSerializer = accountSerializer;
+        this.metrics = metrics;
+        this.counterCoalescer = counterCoalescer;
+    }
+
+    @Override
+    public Mono<Long> balance(Integer accountId) {
+        return rinhaRepository.totalBalanceByAccountId(accountId).map(KeyPairValue::value);
+    }
+
+    @Override
+    public Mono<Long> apply(Transaction transaction, int limit) {
+        if (counterCoalescer.isEnabled()) {
+            return accountSerializer.submit(transaction.accountId(), () -> reserve(transaction, limit))
+                    .flatMap(reservation -> reservation.value().thenReturn(reservation.key()));
+        }
+        var accountId = transaction.accountId();
+        return accountSerializer.submit(accountId, () -> metrics.time(Stage.BALANCE_READ, rinhaRepository.totalBalanceByAccountId(accountId))
+                .flatMap(balance -> {
+                    checkLimit(transaction, balance.key(), limit);
+                    var amount = transaction.signedAmount();
+                    return Mono.zip(metrics.time(Stage.TEMPORARY_UPDATE, rinhaRepository.updateTemporaryAccountBalance(amount, accountId)),
+                                    metrics.time(Stage.INSERT, rinhaRepository.saveTransaction(transaction)),
+                                    metrics.time(Stage.TOTAL_UPDATE, rinhaRepository.updateAccountBalance(amount, accountId)))
+                            .map(t -> balance.value() + amount);
+                }));
+    }
+
+    @Override
+    public Mono<Void> add(Integer accountId, long delta) {
+        // one statement, so the two counters move together or not at all
+        return rinhaRepository.updateAccountBalances(delta, accountId).then();
+    }
+
+    @Override
+    public Flux<KeyPairValue<Integer, Long>> findAll() {
+        return rinhaRepository.findAllBalances();
+    }
+
+    /**
+     * Expectations of accounts that moved are marked failed rather than removed, so the lane drops them once
+     * their outstanding writes are over and only then reads the counters again.
+     */
+    @Override
+    public void retain(Predicate<Integer> accounts) {
+        expectedBalances.forEach((accountId, balance) -> {
+            if (!accounts.test(accountId)) {
+                balance.failed = true;
+            }
+        });
+    }
+
+    /**
+     * Runs inside the account lane: checks the limit, moves the expected balance and queues the writes,
+     * which are only awaited outside the lane.
+     */
+    private Mono<KeyPairValue<Long, Mono<Void>>> reserve(Transaction transaction, int limit) {
+        var accountId = transaction.accountId();
+        var expected = expectedBalances.get(accountId);
+        if (expected != null && expected.failed) {
+            return Mono.error(BusinessException.unavailable());
+        }
+        Mono<ExpectedBalance> current = expected != null
+                ? Mono.just(expected)
+                : metrics.time(Stage.BALANCE_READ, rinhaRepository.totalBalanceByAccountId(accountId))
+                .map(balance -> new ExpectedBalance(balance.key(), balance.value()));
+        return current.map(balance -> {
+            checkLimit(transaction, balance.temporary, limit);
+            var amount = transaction.signedAmount();
+            balance.temporary += amount;
+            balance.total += amount;
+            balance.outstanding++;
+            expectedBalances.put(accountId, balance);
+            Mono<Void> write = Mono.when(metrics.time(Stage.INSERT, rinhaRepository.saveTransaction(transaction)),
+                            metrics.time(Stage.COUNTER_UPDATE, counterCoalescer.add(accountId, amount)))
+                    .doOnError(e -> balance.failed = true)
+                    .doFinally(signal -> accountSerializer.submit(accountId, () -> Mono.fromRunnable(() -> release(accountId, balance)))
+                            .subscribe())
+                    .cache();
+            // started here, so the deltas are queued in lane order and still applied if the caller goes away
+            write.subscribe(null, e -> {
+            });
+            return new KeyPairValue<>(balance.total, write);
+        });
+    }
+
+    /**
+     * Runs inside the account lane. Once no write is outstanding the counters hold every delta that was applied,
+     * so the next transaction reads them again; this also drops the expectation after a failed write.
+     */
+    private void release(Integer accountId, ExpectedBalance balance) {
+        if (--balance.outstanding == 0) {
+            expectedBalances.remove(accountId, balance);
+        }
+    }
+
+    private void checkLimit(Transaction transaction, long temporary, int limit) {
+        var start = System.nanoTime();
+        var exceeded = BalanceStore.exceedsLimit(transaction, temporary, limit);
+        metrics.record(Stage.LIMIT_CHECK, start);
+        if (exceeded) {
+            throw BusinessException.limitExceeded();
+        }
+    }
+
+    /**
+     * Only read and written inside the lane of its account, except failed.
+     */
+    private static final class ExpectedBalance {
+        private long temporary;
+        private long total;
+        private int outstanding;
+        private volatile boolean failed;
+
+        ExpectedBalance(long temporary, long total) {
+            this.temporary = temporary;
+            this.total = total;
+        }
+    }
+}
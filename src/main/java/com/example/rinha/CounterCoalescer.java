@@ -0,0 +1,55 @@
+package com.example.rinha;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Sums the counter deltas of the same account for a short window, or up to max-size deltas, through a
+ * {@link KeyedBatcher} and applies them with a single UPDATE of both counters. Each caller completes when
+ * that update is acknowledged.
+ */
+@Component
+public class CounterCoalescer implements DisposableBean {
+    private final Logger log = LoggerFactory.getLogger(CounterCoalescer.class);
+    private final RinhaRepository rinhaRepository;
+    private final KeyedBatcher<Integer, Long> batcher;
+
+    public CounterCoalescer(RinhaRepository rinhaRepository,
+                            @Value("${rinha.cql.counter-coalescing.enabled:false}") boolean enabled,
+                            @Value("${rinha.cql.counter-coalescing.window:1ms}") Duration window,
+                            @Value("${rinha.cql.counter-coalescing.max-size:64}") int maxSize) {
+        this.rinhaRepository = rinhaRepository;
+        this.batcher = enabled ? new KeyedBatcher<>(window, maxSize, this::flush) : null;
+    }
+
+    public boolean isEnabled() {
+        return batcher != null;
+    }
+
+    public Mono<Void> add(Integer accountId, long delta) {
+        return batcher.submit(accountId, delta);
+    }
+
+    private Mono<?> flush(Integer accountId, List<Long> deltas) {
+        var sum = 0L;
+        for (long delta : deltas) {
+            sum += delta;
+        }
+        log.debug("flush: {} deltas of account {} summing {}", deltas.size(), accountId, sum);
+        return rinhaRepository.updateAccountBalances(sum, accountId);
+    }
+
+    @Override
+    public void destroy() {
+        if (batcher != null) {
+            batcher.dispose();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.TransactionRequest;
+import com.example.rinha.dto.TransactionResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the response of each POST carrying an {@code Idempotency-Key} header, so a retried request gets the
+ * original {@link TransactionResponse} instead of moving the counters again. Responses live in memory for the
+ * ttl (bounded by maximum-size) and in rinha.idempotency_keys, which covers retries landing on another instance.
+ * A key is bound to the body it first came with, kept whole; reusing it with another body is rejected.
+ * Before the transaction is applied the key is claimed in Cassandra with IF NOT EXISTS, so the same key arriving
+ * on two instances at once is applied by one of them and the other answers 409 until the response is stored.
+ * Once the transaction is applied its response is kept in memory even if it could not be stored, so only a
+ * failure to apply lets the key be tried again.
+ */
+@Component
+public class IdempotencyCache {
+    public static final String HEADER = "Idempotency-Key";
+    private static final int MAXIMUM_KEY_LENGTH = 128;
+
+    private final Logger log = LoggerFactory.getLogger(IdempotencyCache.class);
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final RinhaRepository rinhaRepository;
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final int ttlSeconds;
+    private final int maximumSize;
+
+    public IdempotencyCache(RinhaRepository rinhaRepository,
+                            @Value("${rinha.idempotency.enabled:false}") boolean enabled,
+                            @Value("${rinha.idempotency.ttl:10m}") Duration ttl,
+                            @Value("${rinha.idempotency.maximum-size:100000}") int maximumSize) {
+        this.rinhaRepository = rinhaRepository;
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.ttlSeconds = (int) ttl.toSeconds();
+        this.maximumSize = maximumSize;
+    }
+
+    public Mono<TransactionResponse> execute(Integer accountId, String idempotencyKey, TransactionRequest body,
+                                             Supplier<Mono<TransactionResponse>> request) {
+        if (!enabled || idempotencyKey == null) {
+            return request.get();
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAXIMUM_KEY_LENGTH) {
+            return Mono.error(BusinessException.invalidPayload());
+        }
+        var key = accountId + ":" + idempotencyKey;
+        var canonicalBody = canonical(body);
+        var now = System.nanoTime();
+        var entry = entries.get(key);
+        if (entry != null && entry.expiresAt - now > 0) {
+            log.debug("Replaying idempotent request {}", key);
+            return entry.replay(canonicalBody);
+        }
+        var response = rinhaRepository.claimIdempotencyKey(accountId, idempotencyKey, canonicalBody, ttlSeconds)
+                .flatMap(claimed -> {
+                    if (!claimed.key().equals(canonicalBody)) {
+                        return Mono.<TransactionResponse>error(BusinessException.idempotencyKeyReused());
+                    }
+                    return claimed.value() != null ? Mono.just(claimed.value()) : Mono.<TransactionResponse>error(BusinessException.idempotencyKeyInFlight());
+                })
+                .switchIfEmpty(Mono.defer(request)
+                        .onErrorResume(e -> rinhaRepository.releaseIdempotencyKey(accountId, idempotencyKey, canonicalBody)
+                                .onErrorResume(released -> {
+                                    log.warn("Could not release idempotency key {}, it stays claimed until it expires", key, released);
+                                    return Mono.empty();
+                                })
+                                .then(Mono.error(e)))
+                        .flatMap(result -> rinhaRepository.saveIdempotentResponse(accountId, idempotencyKey, canonicalBody, result, ttlSeconds)
+                                .onErrorResume(e -> {
+                                    log.warn("Could not store the response of idempotent request {}, keeping it in memory only", key, e);
+                                    return Mono.empty();
+                                })
+                                .thenReturn(result)))
+                .cache();
+        var created = new Entry(key, canonicalBody, response, now + ttlNanos);
+        var current = entries.compute(key, (k, previous) -> previous != null && previous.expiresAt - now > 0 ? previous : created);
+        if (current != created) {
+            return current.replay(canonicalBody);
+        }
+        insertionOrder.offer(created);
+        evict(now);
+        return response.doOnError(e -> entries.remove(key, created));
+    }
+
+    /**
+     * Every entry has the same ttl, so the insertion order is also the expiration order.
+     */
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (oldest.expiresAt - now <= 0 || entries.size() > maximumSize)) {
+            if (insertionOrder.remove(oldest)) {
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    /**
+     * The body fields in a fixed order; valor and tipo cannot contain the separator, so the description, last,
+     * can be anything. At most a few dozen characters, so it is compared whole instead of hashed.
+     */
+    static String canonical(TransactionRequest body) {
+        return body.amount() + ":" + body.type() + ":" + body.description();
+    }
+
+    private record Entry(String key, String request, Mono<TransactionResponse> response, long expiresAt) {
+        Mono<TransactionResponse> replay(String request) {
+            return this.request.equals(request) ? response : Mono.error(BusinessException.idempotencyKeyReused());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.rinha;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Collects items for a short window, or up to max-size items, and flushes those of the same key together.
+ * Each caller completes when the flush of its batch does. The window is shared by every key and split when it
+ * closes, so no state is kept per key between windows (a group per key, as with groupBy, would never complete).
+ */
+class KeyedBatcher<K, T> implements Disposable {
+    private final Sinks.Many<Pending<K, T>> pending = Sinks.many().unicast().onBackpressureBuffer();
+    private final BiFunction<K, List<T>, Mono<?>> flush;
+    private final Disposable subscription;
+
+    KeyedBatcher(Duration window, int maxSize, BiFunction<K, List<T>, Mono<?>> flush) {
+        this.flush = flush;
+        this.subscription = pending.asFlux()
+                .bufferTimeout(maxSize, window)
+                .flatMapIterable(KeyedBatcher::byKey)
+                .flatMap(this::flush)
+                .subscribe();
+    }
+
+    Mono<Void> submit(K key, T item) {
+        return Mono.create(sink -> pending.emitNext(new Pending<>(key, item, sink),
+                Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100))));
+    }
+
+    @Override
+    public void dispose() {
+        subscription.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return subscription.isDisposed();
+    }
+
+    private static <K, T> Collection<List<Pending<K, T>>> byKey(List<Pending<K, T>> window) {
+        if (window.size() == 1) {
+            return List.of(window);
+        }
+        Map<K, List<Pending<K, T>>> keys = new LinkedHashMap<>();
+        window.forEach(pending -> keys.computeIfAbsent(pending.key(), key -> new ArrayList<>()).add(pending));
+        return keys.values();
+    }
+
+    private Mono<Void> flush(List<Pending<K, T>> batch) {
+        var items = new ArrayList<T>(batch.size());
+        batch.forEach(pending -> items.add(pending.item()));
+        return Mono.defer(() -> flush.apply(batch.get(0).key(), items))
+                .doOnSuccess(result -> batch.forEach(pending -> pending.sink().success()))
+                .doOnError(e -> batch.forEach(pending -> pending.sink().error(e)))
+                .onErrorComplete()
+                .then();
+    }
+
+    private record Pending<K, T>(K key, T item, MonoSink<Void> sink) {
+    }
+}
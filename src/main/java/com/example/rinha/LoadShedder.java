@@ -0,0 +1,85 @@
+package com.example.rinha;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+
+/**
+ * Caps the requests in flight per endpoint with a {@link ConcurrencyLimiter} and answers the excess with 503
+ * and Retry-After instead of queueing it. The limits back off while the average CQL round trip is above
+ * target-latency or requests fail, at most once per cooldown. A cancelled request is a client that went away, not a sign of overload.
+ * Off by default: shedding changes what clients see, so it is turned on where the limits were tuned.
+ */
+@Component
+public class LoadShedder {
+    static final String TRANSACTIONS = "transacoes";
+    static final String STATEMENTS = "extrato";
+
+    private final ConcurrencyLimiter transactions;
+    private final ConcurrencyLimiter statements;
+    private final RinhaMetrics metrics;
+    private final boolean enabled;
+    private final long targetLatencyNanos;
+    private final String retryAfter;
+
+    public LoadShedder(RinhaMetrics metrics,
+                       @Value("${rinha.limiter.enabled:false}") boolean enabled,
+                       @Value("${rinha.limiter.initial:128}") int initial,
+                       @Value("${rinha.limiter.minimum:8}") int minimum,
+                       @Value("${rinha.limiter.maximum:1024}") int maximum,
+                       @Value("${rinha.limiter.backoff-ratio:0.9}") double backoffRatio,
+                       @Value("${rinha.limiter.target-latency:50ms}") Duration targetLatency,
+                       @Value("${rinha.limiter.cooldown:50ms}") Duration cooldown,
+                       @Value("${rinha.limiter.retry-after:1s}") Duration retryAfter) {
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.retryAfter = Long.toString(Math.max(1, retryAfter.toSeconds()));
+        this.transactions = new ConcurrencyLimiter(initial, minimum, maximum, backoffRatio, cooldown.toNanos());
+        this.statements = new ConcurrencyLimiter(initial, minimum, maximum, backoffRatio, cooldown.toNanos());
+        register(TRANSACTIONS, transactions);
+        register(STATEMENTS, statements);
+    }
+
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        var endpoint = enabled ? endpoint(exchange.getRequest()) : null;
+        if (endpoint == null) {
+            return chain.filter(exchange);
+        }
+        var limiter = endpoint == TRANSACTIONS ? transactions : statements;
+        if (!limiter.tryAcquire()) {
+            metrics.shed(endpoint);
+            var response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+            return response.setComplete();
+        }
+        return chain.filter(exchange)
+                .doFinally(signal -> limiter.release(signal == SignalType.ON_ERROR || metrics.cqlLatencyNanos() > targetLatencyNanos));
+    }
+
+    private static String endpoint(ServerHttpRequest request) {
+        var path = request.getPath().value();
+        if (request.getMethod() == HttpMethod.POST && path.endsWith("/" + TRANSACTIONS)) {
+            return TRANSACTIONS;
+        }
+        if (request.getMethod() == HttpMethod.GET && path.endsWith("/" + STATEMENTS)) {
+            return STATEMENTS;
+        }
+        return null;
+    }
+
+    private void register(String endpoint, ConcurrencyLimiter limiter) {
+        metrics.endpointGauge("rinha.limiter.limit", endpoint, limiter, ConcurrencyLimiter::limit);
+        metrics.endpointGauge("rinha.limiter.in-flight", endpoint, limiter, ConcurrencyLimiter::inFlight);
+    }
+}
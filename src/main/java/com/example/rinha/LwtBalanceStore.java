@@ -0,0 +1,103 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.KeyPairValue;
+import com.example.rinha.model.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.function.LongPredicate;
+
+/**
+ * Keeps the balance in a regular bigint column of rinha.accounts_ledger and moves it with
+ * {@code UPDATE ... IF balance = ?}, retrying with the balance returned by a rejected condition.
+ * A conditional update cannot share a batch with the insert into another table, so the transaction is inserted
+ * after the balance moved (an upsert, retried) and, if it still fails, the move is compensated.
+ */
+@Component
+@ConditionalOnProperty(name = "rinha.balance.engine", havingValue = "lwt")
+public class LwtBalanceStore implements BalanceStore {
+    private static final Retry INSERT_RETRY = Retry.backoff(3, Duration.ofMillis(10));
+    private final Logger log = LoggerFactory.getLogger(LwtBalanceStore.class);
+    private final RinhaRepository rinhaRepository;
+    private final int maxAttempts;
+
+    public LwtBalanceStore(RinhaRepository rinhaRepository, @Value("${rinha.balance.lwt.max-attempts:5}") int maxAttempts) {
+        this.rinhaRepository = rinhaRepository;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Override
+    public Mono<Long> balance(Integer accountId) {
+        return rinhaRepository.findLedgerBalance(accountId).defaultIfEmpty(0L);
+    }
+
+    @Override
+    public Mono<Long> apply(Transaction transaction, int limit) {
+        var accountId = transaction.accountId();
+        var amount = transaction.signedAmount();
+        return compareAndSet(accountId, amount, balance -> BalanceStore.exceedsLimit(transaction, balance, limit), maxAttempts)
+                .flatMap(balance -> rinhaRepository.saveTransaction(transaction)
+                        .retryWhen(INSERT_RETRY)
+                        .thenReturn(balance)
+                        .onErrorResume(e -> compensate(transaction, e)));
+    }
+
+    @Override
+    public Mono<Void> add(Integer accountId, long delta) {
+        return compareAndSet(accountId, delta, balance -> false, Integer.MAX_VALUE).then();
+    }
+
+    @Override
+    public Flux<KeyPairValue<Integer, Long>> findAll() {
+        return rinhaRepository.findAllLedgerBalances();
+    }
+
+    /**
+     * Moves the balance back when the transaction could not be inserted, then fails the request with the insert error.
+     */
+    private Mono<Long> compensate(Transaction transaction, Throwable insertError) {
+        var accountId = transaction.accountId();
+        log.warn("Could not insert transaction {}, moving the balance of account {} back", transaction, accountId, insertError);
+        return compareAndSet(accountId, -transaction.signedAmount(), balance -> false, Integer.MAX_VALUE)
+                .onErrorResume(e -> {
+                    log.error("Could not move the balance of account {} back by {}, it is off until repaired",
+                            accountId, transaction.signedAmount(), e);
+                    return Mono.empty();
+                })
+                .then(Mono.error(insertError));
+    }
+
+    private Mono<Long> compareAndSet(Integer accountId, long amount, LongPredicate exceedsLimit, int attempts) {
+        return rinhaRepository.findLedgerBalance(accountId)
+                .map(balance -> new KeyPairValue<>(true, balance))
+                .defaultIfEmpty(new KeyPairValue<>(false, 0L))
+                .flatMap(current -> compareAndSet(accountId, amount, exceedsLimit, current.key(), current.value(), attempts));
+    }
+
+    private Mono<Long> compareAndSet(Integer accountId, long amount, LongPredicate exceedsLimit, boolean exists, long expected, int attempts) {
+        if (exceedsLimit.test(expected)) {
+            return Mono.error(BusinessException.limitExceeded());
+        }
+        var updated = expected + amount;
+        var write = exists
+                ? rinhaRepository.compareAndSetLedgerBalance(accountId, expected, updated)
+                : rinhaRepository.insertLedgerBalance(accountId, updated);
+        return write.flatMap(result -> {
+            if (result.key()) {
+                return Mono.just(updated);
+            }
+            if (attempts <= 1) {
+                log.warn("Giving up on balance update of account {} after contention", accountId);
+                return Mono.error(BusinessException.unavailable());
+            }
+            return compareAndSet(accountId, amount, exceedsLimit, true, result.value(), attempts - 1);
+        });
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.rinha;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+
+/**
+ * Event loop and allocator settings of the HTTP server. The defaults fit a container limited to half a CPU:
+ * a single event loop and the pooled allocator. Keep-alive and idle timeouts are the standard server.netty.* properties.
+ * Pipelined HTTP/1.1 requests are always accepted and answered in order by Reactor Netty.
+ * The event loops are created here, so they are also shut down here once the server has stopped.
+ */
+@Component
+public class NettyTuning implements NettyServerCustomizer, DisposableBean {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
+    private final int eventLoopThreads;
+    private final String allocator;
+    private LoopResources loopResources;
+
+    public NettyTuning(@Value("${rinha.netty.event-loop-threads:1}") int eventLoopThreads,
+                       @Value("${rinha.netty.allocator:pooled}") String allocator) {
+        this.eventLoopThreads = eventLoopThreads;
+        this.allocator = allocator;
+    }
+
+    @Override
+    public HttpServer apply(HttpServer httpServer) {
+        var server = httpServer.childOption(ChannelOption.ALLOCATOR, allocator());
+        if (eventLoopThreads > 0) {
+            server = server.runOn(loopResources());
+        }
+        return server;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (loopResources != null) {
+            loopResources.disposeLater().block(SHUTDOWN_TIMEOUT);
+            loopResources = null;
+        }
+    }
+
+    private synchronized LoopResources loopResources() {
+        if (loopResources == null) {
+            loopResources = LoopResources.create("rinha-http", 1, eventLoopThreads, true);
+        }
+        return loopResources;
+    }
+
+    private ByteBufAllocator allocator() {
+        return switch (allocator) {
+            case "pooled" -> PooledByteBufAllocator.DEFAULT;
+            case "unpooled" -> UnpooledByteBufAllocator.DEFAULT;
+            default -> throw new IllegalArgumentException("Unknown rinha.netty.allocator: " + allocator);
+        };
+    }
+}
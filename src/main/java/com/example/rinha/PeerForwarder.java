@@ -0,0 +1,212 @@
+package com.example.rinha;
+
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Forwards the requests of accounts owned by another peer over pooled keep-alive connections, so every account
+ * is served by a single instance whatever the load balancer does. Forwarded requests carry the shared
+ * rinha.cluster.secret in {@link #FORWARDED_HEADER} and are always served where they land, which stops forwarding
+ * loops while two peers disagree on the ring; the header is ignored unless it holds the secret.
+ * Peers are probed on /health and taken out of the {@link AccountOwnership} ring while they do not answer UP,
+ * and the in-memory state of the accounts that moved away is dropped. The new owner of an account only serves it
+ * once every other peer answers {@link #handover} for it, that is once it no longer owns the account and its
+ * write-behind holds nothing of it.
+ */
+@Component
+@ConditionalOnProperty(name = "rinha.cluster.enabled", havingValue = "true")
+public class PeerForwarder implements DisposableBean {
+    static final String FORWARDED_HEADER = "X-Rinha-Forwarded-By";
+    private static final String ACCOUNTS_PATH = "/clientes/";
+    static final String HANDOVER_PATH = "/cluster/handover/";
+    /**
+     * Re-routes after a refused connection; the ring has changed by then, but a second dead peer ends in a 503.
+     */
+    private static final int MAX_REROUTES = 1;
+
+    private final Logger log = LoggerFactory.getLogger(PeerForwarder.class);
+    private final AccountOwnership accountOwnership;
+    private final Optional<WriteBehindQueue> writeBehindQueue;
+    private final String secret;
+    private final byte[] secretBytes;
+    private final ConnectionProvider connectionProvider;
+    private final WebClient client;
+    private final Disposable healthChecks;
+
+    public PeerForwarder(AccountOwnership accountOwnership, RecentTransactions recentTransactions, BalanceStore balanceStore,
+                         Optional<WriteBehindQueue> writeBehindQueue,
+                         @Value("${rinha.cluster.secret:}") String secret,
+                         @Value("${rinha.cluster.forward.max-connections:64}") int maxConnections,
+                         @Value("${rinha.cluster.forward.timeout:2s}") Duration timeout,
+                         @Value("${rinha.cluster.health-interval:1s}") Duration healthInterval) {
+        if (secret.isBlank()) {
+            throw new IllegalStateException("rinha.cluster.secret must be set when rinha.cluster.enabled is true");
+        }
+        this.accountOwnership = accountOwnership;
+        this.writeBehindQueue = writeBehindQueue;
+        this.secret = secret;
+        this.secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        this.connectionProvider = ConnectionProvider.builder("rinha-peers")
+                .maxConnections(maxConnections)
+                .maxIdleTime(Duration.ofSeconds(30))
+                .build();
+        this.client = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) timeout.toMillis())
+                        .responseTimeout(timeout)
+                        .keepAlive(true)))
+                .build();
+        accountOwnership.onChange(() -> {
+            recentTransactions.retain(accountOwnership::owns);
+            balanceStore.retain(accountOwnership::owns);
+        });
+        this.healthChecks = Flux.interval(healthInterval)
+                .flatMap(tick -> Flux.fromIterable(accountOwnership.peers())
+                        .filter(peer -> !peer.equals(accountOwnership.self()))
+                        .flatMap(this::probe))
+                .subscribe();
+    }
+
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return filter(exchange, chain, MAX_REROUTES);
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain, int reroutes) {
+        var request = exchange.getRequest();
+        var accountId = isForwarded(request.getHeaders()) ? null : accountId(request.getPath().value());
+        if (accountId == null || accountOwnership.owns(accountId)) {
+            return chain.filter(exchange);
+        }
+        var owner = accountOwnership.owner(accountId);
+        var response = exchange.getResponse();
+        return client.method(request.getMethod())
+                .uri(owner + request.getURI().getRawPath())
+                .headers(headers -> {
+                    copy(request.getHeaders(), headers, HttpHeaders.CONTENT_TYPE);
+                    copy(request.getHeaders(), headers, IdempotencyCache.HEADER);
+                    headers.set(FORWARDED_HEADER, secret);
+                })
+                .body(BodyInserters.fromDataBuffers(request.getBody()))
+                .exchangeToMono(forwarded -> {
+                    response.setStatusCode(forwarded.statusCode());
+                    copy(forwarded.headers().asHttpHeaders(), response.getHeaders(), HttpHeaders.CONTENT_TYPE);
+                    copy(forwarded.headers().asHttpHeaders(), response.getHeaders(), HttpHeaders.RETRY_AFTER);
+                    return response.writeWith(forwarded.bodyToFlux(DataBuffer.class));
+                })
+                .onErrorResume(WebClientRequestException.class, e -> {
+                    accountOwnership.markDown(owner);
+                    if (e.getCause() instanceof ConnectException && reroutes > 0) {
+                        // nothing was sent, the account now belongs to another peer, possibly this one
+                        return filter(exchange, chain, reroutes - 1);
+                    }
+                    log.warn("Could not forward {} to {}", request.getPath(), owner, e);
+                    response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+                    return response.setComplete();
+                });
+    }
+
+    /**
+     * Answers 204 when this instance has handed the account over: it does not own it and has nothing of it left
+     * to write. Only peers, which send the secret, get an answer.
+     */
+    public Mono<ServerResponse> handover(ServerRequest request) {
+        if (!isForwarded(request.headers().asHttpHeaders())) {
+            return ServerResponse.notFound().build();
+        }
+        var accountId = RinhaHandler.parseAccountId(request.pathVariable("accountId"));
+        var handedOver = !accountOwnership.owns(accountId)
+                && writeBehindQueue.map(queue -> !queue.hasPending(accountId)).orElse(true);
+        return handedOver ? ServerResponse.noContent().build() : ServerResponse.status(HttpStatus.CONFLICT).build();
+    }
+
+    /**
+     * True once every other peer that is up has handed the account over. A peer that refuses the connection is
+     * marked down and whatever it still held is lost either way; any other failure counts as not handed over.
+     */
+    public Mono<Boolean> handedOver(Integer accountId) {
+        return Flux.fromIterable(accountOwnership.peers())
+                .filter(peer -> !peer.equals(accountOwnership.self()) && accountOwnership.isUp(peer))
+                .flatMap(peer -> client.get()
+                        .uri(peer + HANDOVER_PATH + accountId)
+                        .header(FORWARDED_HEADER, secret)
+                        .retrieve()
+                        .toBodilessEntity()
+                        .thenReturn(true)
+                        .onErrorResume(e -> {
+                            if (e instanceof WebClientRequestException && e.getCause() instanceof ConnectException) {
+                                accountOwnership.markDown(peer);
+                                return Mono.just(true);
+                            }
+                            return Mono.just(false);
+                        }))
+                .all(handedOver -> handedOver);
+    }
+
+    private Mono<Void> probe(String peer) {
+        return client.get()
+                .uri(peer + "/health")
+                .retrieve()
+                .toBodilessEntity()
+                .doOnNext(health -> accountOwnership.markUp(peer))
+                .doOnError(e -> accountOwnership.markDown(peer))
+                .onErrorComplete()
+                .then();
+    }
+
+    private boolean isForwarded(HttpHeaders headers) {
+        var value = headers.getFirst(FORWARDED_HEADER);
+        return value != null && MessageDigest.isEqual(secretBytes, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Integer accountId(String path) {
+        if (!path.startsWith(ACCOUNTS_PATH)) {
+            return null;
+        }
+        var end = path.indexOf('/', ACCOUNTS_PATH.length());
+        try {
+            return Integer.parseInt(path, ACCOUNTS_PATH.length(), end < 0 ? path.length() : end, 10);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void copy(HttpHeaders from, HttpHeaders to, String name) {
+        var value = from.getFirst(name);
+        if (value != null) {
+            to.set(name, value);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        healthChecks.dispose();
+        connectionProvider.dispose();
+    }
+}
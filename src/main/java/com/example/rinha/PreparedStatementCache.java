@@ -0,0 +1,83 @@
+package com.example.rinha;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prepares each CQL text once and reuses the {@link PreparedStatement} for every execution.
+ * Bound statements carry the routing key of the partition, so the driver's default load balancing
+ * policy sends them straight to a replica (token-aware routing). The CQL texts are the constants of
+ * {@link RinhaRepository}, so the cache is not bounded.
+ */
+@Component
+public class PreparedStatementCache {
+    private final Logger log = LoggerFactory.getLogger(PreparedStatementCache.class);
+    private final Map<String, CompletableFuture<PreparedStatement>> statements = new ConcurrentHashMap<>();
+    private final CqlSession session;
+    private final RinhaMetrics metrics;
+
+    public PreparedStatementCache(CqlSession session, RinhaMetrics metrics) {
+        this.session = session;
+        this.metrics = metrics;
+    }
+
+    public Mono<Void> prepareAll(Collection<String> cqls) {
+        return Flux.fromIterable(cqls)
+                .flatMap(cql -> Mono.fromFuture(prepare(cql), true))
+                .then();
+    }
+
+    public Mono<BoundStatement> bind(String cql, Object... values) {
+        var statement = prepare(cql);
+        if (statement.isDone() && !statement.isCompletedExceptionally()) {
+            return Mono.just(statement.join().bind(values));
+        }
+        return Mono.fromFuture(statement, true)
+                .map(preparedStatement -> preparedStatement.bind(values));
+    }
+
+    public Mono<AsyncResultSet> execute(String cql, Object... values) {
+        return bind(cql, values)
+                .flatMap(this::execute);
+    }
+
+    public Mono<AsyncResultSet> execute(Statement<?> statement) {
+        return metrics.time(statement, Mono.fromCompletionStage(() -> session.executeAsync(statement)));
+    }
+
+    public CompletableFuture<PreparedStatement> prepare(String cql) {
+        var statement = statements.get(cql);
+        if (statement != null) {
+            return statement;
+        }
+        var future = new CompletableFuture<PreparedStatement>();
+        var existing = statements.putIfAbsent(cql, future);
+        if (existing != null) {
+            return existing;
+        }
+        log.debug("Preparing statement: {}", cql);
+        session.prepareAsync(cql).whenComplete((preparedStatement, e) -> {
+            if (e != null) {
+                log.warn("Could not prepare statement: {}", cql, e);
+                statements.remove(cql, future);
+                future.completeExceptionally(e);
+            } else {
+                future.complete(preparedStatement);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.rinha;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes at most one warning per interval and reports how many were dropped since, for warnings
+ * that any client can trigger at will.
+ */
+final class RateLimitedLog {
+    private final Logger log;
+    private final long intervalNanos;
+    private final AtomicLong nextAt = new AtomicLong(System.nanoTime());
+    private final LongAdder suppressed = new LongAdder();
+
+    RateLimitedLog(Logger log, Duration interval) {
+        this.log = log;
+        this.intervalNanos = interval.toNanos();
+    }
+
+    void warn(String message, Object argument) {
+        var now = System.nanoTime();
+        var next = nextAt.get();
+        if (now - next < 0 || !nextAt.compareAndSet(next, now + intervalNanos)) {
+            suppressed.increment();
+            return;
+        }
+        if (log.isWarnEnabled()) {
+            log.warn(message + " ({} more suppressed)", argument, suppressed.sumThenReset());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.rinha;
+
+import com.example.rinha.model.Transaction;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Last transactions of each account kept in a fixed size ring, newest first, so /extrato does not read
+ * rinha.transactions. A ring only answers once it was seeded from Cassandra, which happens on the first statement read.
+ */
+@Component
+public class RecentTransactions {
+    static final int CAPACITY = 10;
+    private final Map<Integer, Ring> rings = new ConcurrentHashMap<>();
+    private final boolean enabled;
+
+    public RecentTransactions(@Value("${rinha.recent-transactions.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void add(Transaction transaction) {
+        if (enabled) {
+            rings.computeIfAbsent(transaction.accountId(), id -> new Ring()).add(transaction);
+        }
+    }
+
+    public Optional<List<Transaction>> find(Integer accountId) {
+        var ring = rings.get(accountId);
+        return ring == null ? Optional.empty() : ring.snapshot();
+    }
+
+    public void seed(Integer accountId, List<Transaction> transactions) {
+        if (enabled) {
+            rings.computeIfAbsent(accountId, id -> new Ring()).seed(transactions);
+        }
+    }
+
+    public void retain(Predicate<Integer> accounts) {
+        rings.keySet().removeIf(accountId -> !accounts.test(accountId));
+    }
+
+    public void clear() {
+        rings.clear();
+    }
+
+    /**
+     * Kept ordered by dateMillis, oldest first. A transaction already present, or older than every entry of
+     * a full ring, is ignored, so a late or repeated add never shows up as the newest one.
+     */
+    private static final class Ring {
+        private final Transaction[] entries = new Transaction[CAPACITY];
+        private int size;
+        private boolean seeded;
+
+        synchronized void add(Transaction transaction) {
+            long dateMillis = transaction.dateMillis();
+            var position = size;
+            while (position > 0 && entries[position - 1].dateMillis() > dateMillis) {
+                position--;
+            }
+            if (position > 0 && entries[position - 1].dateMillis() == dateMillis) {
+                return;
+            }
+            if (size < CAPACITY) {
+                System.arraycopy(entries, position, entries, position + 1, size - position);
+                entries[position] = transaction;
+                size++;
+            } else if (position > 0) {
+                System.arraycopy(entries, 1, entries, 0, position - 1);
+                entries[position - 1] = transaction;
+            }
+        }
+
+        synchronized Optional<List<Transaction>> snapshot() {
+            return seeded ? Optional.of(newestFirst()) : Optional.empty();
+        }
+
+        synchronized void seed(List<Transaction> transactions) {
+            if (seeded) {
+                return;
+            }
+            transactions.forEach(this::add);
+            seeded = true;
+        }
+
+        private List<Transaction> newestFirst() {
+            var transactions = new ArrayList<Transaction>(size);
+            for (int i = size - 1; i >= 0; i--) {
+                transactions.add(entries[i]);
+            }
+            return transactions;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.rinha;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Status-only responses for requests the handler rejects before doing any work, built once and returned
+ * without raising an exception. Rejections further down the pipeline signal a shared {@link BusinessException}.
+ */
+final class Rejections {
+    static final Mono<ServerResponse> NOT_FOUND = ServerResponse.status(HttpStatus.NOT_FOUND).build().cache();
+    static final Mono<ServerResponse> UNPROCESSABLE_ENTITY = ServerResponse.status(HttpStatus.UNPROCESSABLE_ENTITY).build().cache();
+
+    private Rejections() {
+    }
+}
@@ -1,88 +1,123 @@
 package com.example.rinha;
 
-import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.metadata.Node;
-import com.datastax.oss.driver.api.core.metadata.NodeState;
+import com.example.rinha.codec.RinhaJsonEncoder;
+import com.example.rinha.codec.TransactionRequestDecoder;
 import com.example.rinha.dto.TransactionRequest;
 import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.util.JsonRecyclerPools;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.codec.CodecCustomizer;
 import org.springframework.context.annotation.Bean;
-import org.springframework.data.cassandra.ReactiveSessionFactory;
-import org.springframework.data.cassandra.core.cql.ReactiveCqlTemplate;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.RouterFunctions;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.springframework.web.server.ServerWebInputException;
 import org.springframework.web.server.WebFilter;
-import reactor.core.publisher.Mono;
-
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
 
 import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
 import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
 
 @SpringBootApplication
+@EnableConfigurationProperties(CassandraDriverProperties.class)
 @RegisterReflectionForBinding(TransactionRequest.class)
 public class RinhaApplication {
+    private static final String ACCOUNTS_PATH = "/clientes/";
 
     public static void main(String[] args) {
         SpringApplication.run(RinhaApplication.class, args);
     }
 
     @Bean
-    public ReactiveCqlTemplate reactiveCqlTemplate(ReactiveSessionFactory sessionFactory) {
-        return new ReactiveCqlTemplate(sessionFactory);
+    public RouterFunction<ServerResponse> routes(RinhaHandler handler, CassandraHealth health) {
+        return RouterFunctions.route(POST("/clientes/{accountId}/transacoes"), handler::handlePostRequest)
+                .andRoute(GET("/clientes/{accountId}/extrato"), handler::handleGetRequest)
+                .andRoute(GET("/health"), request -> health.probe());
     }
 
     @Bean
-    public RouterFunction<ServerResponse> routes(RinhaHandler handler, CqlSession session, ObjectMapper objectMapper) {
-        return RouterFunctions.route(POST("/clientes/{accountId}/transacoes"), handler::handlePostRequest)
-                .andRoute(GET("/clientes/{accountId}/extrato"), handler::handleGetRequest)
-                .andRoute(GET("/health"), request -> healthEndpoint(session, objectMapper));
+    @ConditionalOnProperty(name = "rinha.cluster.enabled", havingValue = "true")
+    public RouterFunction<ServerResponse> clusterRoutes(PeerForwarder peerForwarder) {
+        return RouterFunctions.route(GET(PeerForwarder.HANDOVER_PATH + "{accountId}"), peerForwarder::handover);
     }
 
     @Bean
-    public WebFilter mappingErrorToUnprocessableEntity() {
+    public WebFilter mappingErrorToUnprocessableEntity(RinhaMetrics metrics) {
         return (exchange, next) -> next.filter(exchange)
                 .onErrorResume(ServerWebInputException.class, e -> {
+                    metrics.rejected(BusinessException.INVALID_PAYLOAD);
                     ServerHttpResponse response = exchange.getResponse();
                     response.setStatusCode(HttpStatus.UNPROCESSABLE_ENTITY);
                     return response.setComplete();
                 })
                 .onErrorResume(BusinessException.class, e -> {
+                    if (e.getStatusCode() == HttpStatus.UNPROCESSABLE_ENTITY.value()) {
+                        metrics.rejected(e.getReason());
+                    }
                     ServerHttpResponse response = exchange.getResponse();
                     response.setRawStatusCode(e.getStatusCode());
                     return response.setComplete();
                 });
     }
 
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public WebFilter loadShedding(LoadShedder loadShedder) {
+        return loadShedder::filter;
+    }
+
+    /**
+     * The warm-up account exists only for {@link WarmUp}, which calls it through localhost; to anyone else it
+     * answers 404 like an account that does not exist. Runs before forwarding, so a peer never serves it either.
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public WebFilter hidingWarmUpAccount(@Value("${rinha.warm-up.account-id:0}") int warmUpAccountId) {
+        return (exchange, next) -> {
+            var request = exchange.getRequest();
+            var path = request.getPath().value();
+            if (!path.startsWith(ACCOUNTS_PATH)) {
+                return next.filter(exchange);
+            }
+            var end = path.indexOf('/', ACCOUNTS_PATH.length());
+            var accountId = RinhaHandler.parseAccountId(path.substring(ACCOUNTS_PATH.length(), end < 0 ? path.length() : end));
+            var remote = request.getRemoteAddress();
+            if (accountId == warmUpAccountId && (remote == null || remote.getAddress() == null || !remote.getAddress().isLoopbackAddress())) {
+                exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
+                return exchange.getResponse().setComplete();
+            }
+            return next.filter(exchange);
+        };
+    }
+
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE + 2)
+    @ConditionalOnProperty(name = "rinha.cluster.enabled", havingValue = "true")
+    public WebFilter peerForwarding(PeerForwarder peerForwarder) {
+        return peerForwarder::filter;
+    }
+
+    @Bean
+    CodecCustomizer rinhaJsonCodecs() {
+        return configurer -> {
+            configurer.customCodecs().register(new TransactionRequestDecoder());
+            configurer.customCodecs().register(new RinhaJsonEncoder());
+        };
+    }
+
     @Bean
     Jackson2ObjectMapperBuilderCustomizer loomCustomizer() {
         var jsonFactory = JsonFactory.builder().recyclerPool(JsonRecyclerPools.sharedLockFreePool()).build();
         return builder -> builder.factory(jsonFactory);
     }
 
-    private Mono<ServerResponse> healthEndpoint(CqlSession session, ObjectMapper objectMapper) {
-        try {
-            Collection<Node> nodes = session.getMetadata().getNodes().values();
-            Map<String, NodeState> response = Collections.singletonMap("status", nodes.stream().map(Node::getState).findFirst().orElse(NodeState.UNKNOWN));
-            return ServerResponse.ok()
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .bodyValue(objectMapper.writeValueAsString(response));
-        } catch (JsonProcessingException jpe) {
-            throw new RuntimeException(jpe);
-        }
-    }
-
 }
@@ -1,56 +1,67 @@
 package com.example.rinha;
 
+import com.example.rinha.RinhaMetrics.Stage;
 import com.example.rinha.dto.BalanceResponse;
-import com.example.rinha.dto.KeyPairValue;
 import com.example.rinha.dto.TransactionRequest;
 import com.example.rinha.dto.TransactionResponse;
 import com.example.rinha.model.Transaction;
-import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.AbstractMap;
-import java.util.Map;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.Optional;
 
 @Component
 public class RinhaHandler {
+    private static final int INVALID_ACCOUNT_ID = Integer.MIN_VALUE;
+
     private final Logger log = LoggerFactory.getLogger(RinhaHandler.class);
+    private final RateLimitedLog invalidAccountLog = new RateLimitedLog(log, Duration.ofSeconds(10));
     private final RinhaRepository rinhaRepository;
-    private final Map<Integer, Integer> accounts = Map.ofEntries(
-            new AbstractMap.SimpleEntry<>(1, 100000),
-            new AbstractMap.SimpleEntry<>(2, 80000),
-            new AbstractMap.SimpleEntry<>(3, 1000000),
-            new AbstractMap.SimpleEntry<>(4, 10000000),
-            new AbstractMap.SimpleEntry<>(5, 500000)
-    );
-    private final Map<Integer, ExecutorService> executors = Map.ofEntries(
-            new AbstractMap.SimpleEntry<>(1, Executors.newSingleThreadExecutor(new DefaultThreadFactory("client 1"))),
-            new AbstractMap.SimpleEntry<>(2, Executors.newSingleThreadExecutor(new DefaultThreadFactory("client 2"))),
-            new AbstractMap.SimpleEntry<>(3, Executors.newSingleThreadExecutor(new DefaultThreadFactory("client 3"))),
-            new AbstractMap.SimpleEntry<>(4, Executors.newSingleThreadExecutor(new DefaultThreadFactory("client 4"))),
-            new AbstractMap.SimpleEntry<>(5, Executors.newSingleThreadExecutor(new DefaultThreadFactory("client 5")))
-    );
+    private final BalanceStore balanceStore;
+    private final Optional<AccountLedger> accountLedger;
+    private final RecentTransactions recentTransactions;
+    private final TransactionClock transactionClock;
+    private final RinhaMetrics metrics;
+    private final AccountRegistry accountRegistry;
+    private final IdempotencyCache idempotencyCache;
+    private final Optional<VirtualThreadTransactions> virtualThreads;
 
-    public RinhaHandler(RinhaRepository rinhaRepository) {
+    public RinhaHandler(RinhaRepository rinhaRepository, BalanceStore balanceStore,
+                        Optional<AccountLedger> accountLedger, RecentTransactions recentTransactions,
+                        TransactionClock transactionClock, RinhaMetrics metrics, AccountRegistry accountRegistry,
+                        IdempotencyCache idempotencyCache, Optional<VirtualThreadTransactions> virtualThreads) {
         this.rinhaRepository = rinhaRepository;
+        this.balanceStore = balanceStore;
+        this.accountLedger = accountLedger;
+        this.recentTransactions = recentTransactions;
+        this.transactionClock = transactionClock;
+        this.metrics = metrics;
+        this.accountRegistry = accountRegistry;
+        this.idempotencyCache = idempotencyCache;
+        this.virtualThreads = virtualThreads;
     }
 
     public Mono<ServerResponse> handleGetRequest(ServerRequest request) {
-        var accountId = getLimitByAccountId(request).key();
+        int accountId = getAccountIdByRequestParam(request);
+        if (accountId == INVALID_ACCOUNT_ID) {
+            return rejectInvalidAccountId();
+        }
+        var limit = accountRegistry.limit(accountId);
+        if (limit == AccountRegistry.UNKNOWN) {
+            return Rejections.NOT_FOUND;
+        }
         log.debug("handleGetRequest: {}", request);
-        return Mono.zip(rinhaRepository.totalBalanceByAccountId(accountId), rinhaRepository.findLastTransactionsByAccountId(accountId).collectList())
+        return Mono.zip(totalBalance(accountId), lastTransactions(accountId))
                 .flatMap(p -> {
-                    var balance = new BalanceResponse.Balance(p.getT1().value(), Instant.now(), getLimitByAccountId(request).value());
+                    var balance = new BalanceResponse.Balance(p.getT1(), Instant.now(), limit);
                     log.debug("getLastTransactions:balance: {}", balance);
                     return ServerResponse.ok()
                             .contentType(MediaType.APPLICATION_JSON)
@@ -59,69 +70,96 @@ public class RinhaHandler {
     }
 
     public Mono<ServerResponse> handlePostRequest(ServerRequest request) {
-        var account = getLimitByAccountId(request);
+        int clientId = getAccountIdByRequestParam(request);
+        if (clientId == INVALID_ACCOUNT_ID) {
+            return rejectInvalidAccountId();
+        }
+        var limit = accountRegistry.limit(clientId);
+        if (limit == AccountRegistry.UNKNOWN) {
+            return Rejections.NOT_FOUND;
+        }
         log.debug("handlePostRequest: {}", request);
-        var clientId = account.key();
-        return Mono.zip(processRequest(request, account.key()), getTotalBalance(clientId))
-                .flatMap(tuple -> {
-                    var total = tuple.getT2().value();
-                    var temporaryTotal = tuple.getT2().key();
-                    var transactionRequest = tuple.getT1();
-
-                    var amount = transactionRequest.amount();
-
-                    if (transactionRequest.type().equals("d")) {
-                        if ((amount + Math.abs(temporaryTotal)) > account.value()) {
-                            return Mono.error(new BusinessException(HttpStatus.UNPROCESSABLE_ENTITY));
-                        }
-                        amount = -amount;
-                    }
-
-                    var totalBalance = total + amount;
-                    return Mono.zip(rinhaRepository.saveTransaction(new Transaction(transactionRequest, account.key(), Instant.now())), rinhaRepository.updateAccountBalance(amount, clientId))
-                            .map(t -> new TransactionResponse(account.value(), totalBalance));
-                })
+        return metrics.time(Stage.DECODE, request.bodyToMono(TransactionRequest.class))
+                .flatMap(transactionRequest -> idempotencyCache.execute(clientId, request.headers().firstHeader(IdempotencyCache.HEADER), transactionRequest, () -> {
+                    log.debug("issuer:transactionRequest: {}", transactionRequest);
+                    var transaction = new Transaction(transactionRequest, clientId, transactionClock.next(clientId));
+                    return apply(transaction, limit)
+                            .map(balance -> new TransactionResponse(limit, balance));
+                }))
                 .flatMap(response -> ServerResponse.ok()
                         .contentType(MediaType.APPLICATION_JSON)
                         .bodyValue(response));
     }
 
-    private Mono<KeyPairValue<Long, Long>> getTotalBalance(Integer clientId) {
-        try {
-            return executors.get(clientId).submit(() -> rinhaRepository.totalBalanceByAccountId(clientId))
-                    .get();
-        } catch (InterruptedException | ExecutionException e) {
-            log.error("Unexpected error", e);
-            return Mono.error(new BusinessException(HttpStatus.INTERNAL_SERVER_ERROR));
+    private Mono<Long> apply(Transaction transaction, int limit) {
+        if (ownedByLedger(transaction.accountId())) {
+            return accountLedger.get().apply(transaction, limit);
         }
+        if (virtualThreads.isPresent()) {
+            return virtualThreads.get().call(() -> virtualThreads.get().apply(transaction, limit));
+        }
+        return balanceStore.apply(transaction, limit);
     }
 
-    private Mono<TransactionRequest> processRequest(ServerRequest request, Integer clientId) {
-        return request
-                .bodyToMono(TransactionRequest.class)
-                .flatMap(transactionRequest -> {
-                    log.debug("issuer:transactionRequest: {}", transactionRequest);
+    private Mono<Long> totalBalance(Integer accountId) {
+        if (ownedByLedger(accountId)) {
+            return accountLedger.get().balance(accountId);
+        }
+        if (virtualThreads.isPresent()) {
+            return virtualThreads.get().call(() -> virtualThreads.get().balance(accountId));
+        }
+        return balanceStore.balance(accountId);
+    }
 
-                    var amount = (transactionRequest.type().equals("d") ? -transactionRequest.amount() : transactionRequest.amount());
-                    return rinhaRepository.updateTemporaryAccountBalance(amount, clientId)
-                            .map(p -> transactionRequest);
-                });
+    private Mono<List<Transaction>> lastTransactions(Integer accountId) {
+        if (virtualThreads.isPresent()) {
+            return virtualThreads.get().call(() -> virtualThreads.get().lastTransactions(accountId));
+        }
+        return recentTransactions.find(accountId)
+                .map(Mono::just)
+                .orElseGet(() -> rinhaRepository.findLastTransactionsByAccountId(accountId)
+                        .collectList()
+                        .doOnNext(transactions -> recentTransactions.seed(accountId, transactions)));
     }
 
-    private KeyPairValue<Integer, Integer> getLimitByAccountId(ServerRequest request) {
-        Integer accountId = getAccountIdByRequestParam(request);
-        if (!accounts.containsKey(accountId)) {
-            throw new BusinessException(HttpStatus.NOT_FOUND);
+    private boolean ownedByLedger(Integer accountId) {
+        return accountLedger.isPresent() && accountLedger.get().owns(accountId);
+    }
+
+    private Mono<ServerResponse> rejectInvalidAccountId() {
+        metrics.rejected(BusinessException.INVALID_ACCOUNT_ID);
+        return Rejections.UNPROCESSABLE_ENTITY;
+    }
+
+    private int getAccountIdByRequestParam(ServerRequest request) {
+        var accountId = request.pathVariable("accountId");
+        var id = parseAccountId(accountId);
+        if (id == INVALID_ACCOUNT_ID) {
+            invalidAccountLog.warn("Invalid account id: {}", accountId);
         }
-        return new KeyPairValue<>(accountId, accounts.get(accountId));
+        return id;
     }
 
-    private Integer getAccountIdByRequestParam(ServerRequest request) {
-        try {
-            return Integer.parseInt(request.pathVariable("accountId"));
-        } catch (NumberFormatException nfe) {
-            log.warn("Invalid data", nfe);
-            throw new BusinessException(HttpStatus.UNPROCESSABLE_ENTITY);
+    /**
+     * Integer.parseInt without the NumberFormatException, which would fill in a stack trace for every bad id.
+     * Accepts the same input, a leading sign included, except Integer.MIN_VALUE, which marks the invalid ids.
+     */
+    static int parseAccountId(String value) {
+        var negative = value.startsWith("-");
+        var start = negative || value.startsWith("+") ? 1 : 0;
+        var length = value.length();
+        if (length == start || length - start > 10) {
+            return INVALID_ACCOUNT_ID;
+        }
+        long id = 0;
+        for (int i = start; i < length; i++) {
+            var digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID_ACCOUNT_ID;
+            }
+            id = id * 10 + digit;
         }
+        id = negative ? -id : id;
+        return id <= INVALID_ACCOUNT_ID || id > Integer.MAX_VALUE ? INVALID_ACCOUNT_ID : (int) id;
     }
 }
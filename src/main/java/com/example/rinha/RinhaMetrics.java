@@ -0,0 +1,127 @@
+package com.example.rinha;
+
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Timers for each stage of the transaction pipeline and for every CQL statement, plus the rejection counters.
+ * Meters are created once and cached, so recording on the hot path is a map lookup and an atomic update.
+ */
+@Component
+public class RinhaMetrics {
+    public enum Stage {
+        DECODE, BALANCE_READ, LIMIT_CHECK, TEMPORARY_UPDATE, INSERT, TOTAL_UPDATE, COUNTER_UPDATE;
+
+        private final String tag = name().toLowerCase().replace('_', '-');
+    }
+
+    private static final String BATCH = "BATCH";
+    private static final double CQL_LATENCY_WEIGHT = 0.05;
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final Map<String, Timer> statements = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+    private final Map<String, Counter> shed = new ConcurrentHashMap<>();
+    private final Counter balanceDrift;
+    private volatile double cqlLatencyNanos;
+
+    public RinhaMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, Timer.builder("rinha.stage")
+                    .description("Time spent in each stage of a transaction")
+                    .tag("stage", stage.tag)
+                    .register(registry));
+        }
+        balanceDrift = Counter.builder("rinha.compaction.drift")
+                .description("Accounts whose balance differs from the one rebuilt from the transaction log")
+                .register(registry);
+        Gauge.builder("rinha.cql.latency.average", this, RinhaMetrics::cqlLatencyNanos)
+                .description("Exponentially weighted moving average of the CQL round trips, in nanoseconds")
+                .register(registry);
+    }
+
+    public <T> Mono<T> time(Stage stage, Mono<T> mono) {
+        var timer = stages.get(stage);
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return mono.doFinally(signal -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    public void record(Stage stage, long startNanos) {
+        stages.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> Mono<T> time(Statement<?> statement, Mono<T> mono) {
+        var timer = statements.computeIfAbsent(query(statement), query -> Timer.builder("rinha.cql")
+                .description("Round trip of each CQL statement")
+                .tag("statement", query)
+                .register(registry));
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return mono.doFinally(signal -> {
+                var elapsed = System.nanoTime() - start;
+                timer.record(elapsed, TimeUnit.NANOSECONDS);
+                cqlLatencyNanos += (elapsed - cqlLatencyNanos) * CQL_LATENCY_WEIGHT;
+            });
+        });
+    }
+
+    /**
+     * Moving average of the CQL round trips. Updates from concurrent threads may be lost, which is fine for a trend.
+     */
+    public double cqlLatencyNanos() {
+        return cqlLatencyNanos;
+    }
+
+    public void rejected(String reason) {
+        rejections.computeIfAbsent(reason, key -> Counter.builder("rinha.rejections")
+                        .description("Requests answered with 422, by reason")
+                        .tag("reason", key)
+                        .register(registry))
+                .increment();
+    }
+
+    public void shed(String endpoint) {
+        shed.computeIfAbsent(endpoint, key -> Counter.builder("rinha.shed")
+                        .description("Requests answered with 503 by the concurrency limiter")
+                        .tag("endpoint", key)
+                        .register(registry))
+                .increment();
+    }
+
+    public void balanceDrift() {
+        balanceDrift.increment();
+    }
+
+    public <T> void endpointGauge(String name, String endpoint, T state, ToDoubleFunction<T> value) {
+        Gauge.builder(name, state, value)
+                .tag("endpoint", endpoint)
+                .register(registry);
+    }
+
+    public <T> void gauge(String name, T state, ToDoubleFunction<T> value) {
+        Gauge.builder(name, state, value).register(registry);
+    }
+
+    private static String query(Statement<?> statement) {
+        if (statement instanceof BoundStatement boundStatement) {
+            return boundStatement.getPreparedStatement().getQuery();
+        }
+        return BATCH;
+    }
+}
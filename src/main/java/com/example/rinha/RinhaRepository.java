@@ -1,67 +1,425 @@
 package com.example.rinha;
 
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.data.GettableByName;
+import com.datastax.oss.driver.api.core.data.UdtValue;
+import com.datastax.oss.driver.api.core.type.UserDefinedType;
 import com.example.rinha.dto.KeyPairValue;
+import com.example.rinha.dto.TransactionResponse;
 import com.example.rinha.model.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.cassandra.core.cql.ReactiveCqlTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
-import java.time.Instant;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Repository
 public class RinhaRepository {
+    static final String SELECT_LAST_TRANSACTIONS = "SELECT type, description, date, amount, dateMillis FROM rinha.transactions WHERE accountId = ? LIMIT 10";
+    static final String INSERT_TRANSACTION = "INSERT INTO rinha.transactions(accountId, type, description, date, amount, dateMillis) VALUES (?, ?, ?, ?, ?, ?)";
+    static final String INSERT_TRANSACTION_WITH_TTL = INSERT_TRANSACTION + " USING TTL ?";
+    static final String SELECT_TRANSACTIONS_BETWEEN = "SELECT type, amount FROM rinha.transactions WHERE accountId = ? AND dateMillis > ? AND dateMillis <= ?";
+    static final String INSERT_BUCKETED_TRANSACTION = "INSERT INTO rinha.transactions_by_bucket(accountId, bucket, type, description, date, amount, dateMillis) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    static final String INSERT_BUCKETED_TRANSACTION_WITH_TTL = INSERT_BUCKETED_TRANSACTION + " USING TTL ?";
+    static final String SELECT_LAST_BUCKETED_TRANSACTIONS = "SELECT type, description, date, amount, dateMillis FROM rinha.transactions_by_bucket WHERE accountId = ? AND bucket = ? LIMIT 10";
+    static final String SELECT_BUCKETED_TRANSACTIONS_BETWEEN = "SELECT type, amount FROM rinha.transactions_by_bucket WHERE accountId = ? AND bucket = ? AND dateMillis > ? AND dateMillis <= ?";
+    static final String INSERT_TRANSACTION_BUCKET = "INSERT INTO rinha.transaction_buckets (accountId, bucket) VALUES (?, ?)";
+    static final String SELECT_LAST_TRANSACTION_BUCKETS = "SELECT bucket FROM rinha.transaction_buckets WHERE accountId = ? LIMIT 10";
+    static final String SELECT_TRANSACTION_BUCKETS_SINCE = "SELECT bucket FROM rinha.transaction_buckets WHERE accountId = ? AND bucket >= ?";
+    static final String SELECT_LATEST_BALANCE_SNAPSHOT = "SELECT dateMillis, balance FROM rinha.balance_snapshots WHERE accountId = ? LIMIT 1";
+    static final String INSERT_BALANCE_SNAPSHOT = "INSERT INTO rinha.balance_snapshots (accountId, dateMillis, balance) VALUES (?, ?, ?)";
+    static final String DELETE_BALANCE_SNAPSHOTS_BEFORE = "DELETE FROM rinha.balance_snapshots WHERE accountId = ? AND dateMillis < ?";
+    static final String UPDATE_TEMPORARY_BALANCE = "UPDATE rinha.accounts_balance SET temporary = temporary + ? WHERE accountId = ?";
+    static final String UPDATE_TOTAL_BALANCE = "UPDATE rinha.accounts_balance SET total = total + ? WHERE accountId = ?";
+    static final String UPDATE_BALANCES = "UPDATE rinha.accounts_balance SET temporary = temporary + ?, total = total + ? WHERE accountId = ?";
+    static final String SELECT_BALANCE = "SELECT temporary, total FROM rinha.accounts_balance WHERE accountId = ?";
+    static final String SELECT_ALL_BALANCES = "SELECT accountId, total FROM rinha.accounts_balance";
+    static final String SELECT_LEDGER_BALANCE = "SELECT balance FROM rinha.accounts_ledger WHERE accountId = ?";
+    static final String SELECT_ALL_LEDGER_BALANCES = "SELECT accountId, balance FROM rinha.accounts_ledger";
+    static final String COMPARE_AND_SET_LEDGER_BALANCE = "UPDATE rinha.accounts_ledger SET balance = ? WHERE accountId = ? IF balance = ?";
+    static final String INSERT_LEDGER_BALANCE = "INSERT INTO rinha.accounts_ledger (accountId, balance) VALUES (?, ?) IF NOT EXISTS";
+    static final String SELECT_ALL_ACCOUNTS = "SELECT accountId, creditLimit FROM rinha.accounts";
+    static final String CLAIM_IDEMPOTENCY_KEY = "INSERT INTO rinha.idempotency_keys (accountId, idempotencyKey, request) VALUES (?, ?, ?) IF NOT EXISTS USING TTL ?";
+    static final String UPDATE_IDEMPOTENT_RESPONSE = "UPDATE rinha.idempotency_keys USING TTL ? SET creditLimit = ?, balance = ? WHERE accountId = ? AND idempotencyKey = ? IF request = ?";
+    static final String RELEASE_IDEMPOTENCY_KEY = "DELETE FROM rinha.idempotency_keys WHERE accountId = ? AND idempotencyKey = ? IF request = ?";
+    static final String SELECT_STATEMENT_SNAPSHOT = "SELECT entries FROM rinha.last_transactions WHERE accountId = ?";
+    static final String UPDATE_STATEMENT_SNAPSHOT = "UPDATE rinha.last_transactions USING TIMESTAMP ? SET entries = ? WHERE accountId = ?";
+    private static final Map<String, String> EXECUTION_PROFILES = Map.of(
+            SELECT_BALANCE, CassandraDriverProperties.BALANCE_READ,
+            SELECT_LEDGER_BALANCE, CassandraDriverProperties.BALANCE_READ,
+            UPDATE_TEMPORARY_BALANCE, CassandraDriverProperties.COUNTER_WRITE,
+            UPDATE_TOTAL_BALANCE, CassandraDriverProperties.COUNTER_WRITE,
+            UPDATE_BALANCES, CassandraDriverProperties.COUNTER_WRITE);
+
     private final Logger log = LoggerFactory.getLogger(RinhaRepository.class);
-    private final ReactiveCqlTemplate reactiveCqlTemplate;
+    private final PreparedStatementCache statements;
+    private final RecentTransactions recentTransactions;
+    private final TransactionInsertBatcher transactionInsertBatcher;
+    private final TransactionBuckets buckets;
+    private final CqlSession session;
+    private final CassandraHealth health;
+    private final boolean statementSnapshot;
+    private final boolean ledgerBalance;
+    private final int transactionTtlSeconds;
+    private volatile UserDefinedType transactionEntryType;
+
+    public RinhaRepository(PreparedStatementCache statements, RecentTransactions recentTransactions,
+                           TransactionInsertBatcher transactionInsertBatcher, TransactionBuckets buckets,
+                           CqlSession session, CassandraHealth health,
+                           @Value("${rinha.statement-snapshot.enabled:false}") boolean statementSnapshot,
+                           @Value("${rinha.balance.engine:counter}") String balanceEngine,
+                           @Value("${rinha.transactions.ttl:0s}") Duration transactionTtl) {
+        this.statements = statements;
+        this.recentTransactions = recentTransactions;
+        this.transactionInsertBatcher = transactionInsertBatcher;
+        this.buckets = buckets;
+        this.session = session;
+        this.health = health;
+        this.statementSnapshot = statementSnapshot && recentTransactions.isEnabled();
+        if (statementSnapshot && !recentTransactions.isEnabled()) {
+            log.warn("rinha.statement-snapshot.enabled is ignored, the snapshot is built from the recent transactions ring, which is disabled");
+        }
+        this.ledgerBalance = balanceEngine.equals("lwt");
+        this.transactionTtlSeconds = (int) transactionTtl.toSeconds();
+    }
 
-    public RinhaRepository(ReactiveCqlTemplate reactiveCqlTemplate) {
-        this.reactiveCqlTemplate = reactiveCqlTemplate;
+    @EventListener(ApplicationReadyEvent.class)
+    public void prepareStatements() {
+        var cqls = new ArrayList<>(List.of(UPDATE_TEMPORARY_BALANCE, UPDATE_TOTAL_BALANCE, UPDATE_BALANCES, SELECT_BALANCE, SELECT_ALL_BALANCES, SELECT_ALL_ACCOUNTS));
+        if (buckets.isEnabled()) {
+            cqls.addAll(List.of(SELECT_LAST_TRANSACTION_BUCKETS, SELECT_LAST_BUCKETED_TRANSACTIONS, INSERT_TRANSACTION_BUCKET,
+                    transactionTtlSeconds > 0 ? INSERT_BUCKETED_TRANSACTION_WITH_TTL : INSERT_BUCKETED_TRANSACTION));
+        } else {
+            cqls.addAll(List.of(SELECT_LAST_TRANSACTIONS, transactionTtlSeconds > 0 ? INSERT_TRANSACTION_WITH_TTL : INSERT_TRANSACTION));
+        }
+        if (statementSnapshot) {
+            cqls.addAll(List.of(SELECT_STATEMENT_SNAPSHOT, UPDATE_STATEMENT_SNAPSHOT));
+        }
+        if (ledgerBalance) {
+            cqls.addAll(List.of(SELECT_LEDGER_BALANCE, SELECT_ALL_LEDGER_BALANCES, COMPARE_AND_SET_LEDGER_BALANCE, INSERT_LEDGER_BALANCE));
+        }
+        statements.prepareAll(cqls)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(100)).maxBackoff(Duration.ofSeconds(5)))
+                .subscribe(null, e -> log.warn("Could not prepare statements", e), health::statementsPrepared);
     }
 
     public Flux<Transaction> findLastTransactionsByAccountId(Integer accountId) {
-        return reactiveCqlTemplate.query("SELECT type, description, date, amount, dateMillis FROM rinha.TRANSACTIONS WHERE accountId = ? AND dateMillis >= ? and dateMillis <= ? LIMIT 10",
-                (row, rowNum) ->
-                        new Transaction(accountId,
-                                row.getString("type"),
-                                row.getString("description"),
-                                row.getInstant("date"),
-                                row.getInt("amount"),
-                                row.getLong("dateMillis")),
-                accountId,
-                Instant.now().minusSeconds(10).toEpochMilli(),
-                Instant.now().toEpochMilli());
+        if (!statementSnapshot) {
+            return selectLastTransactions(accountId);
+        }
+        return execute(SELECT_STATEMENT_SNAPSHOT, accountId)
+                .mapNotNull(AsyncResultSet::one)
+                .flatMapIterable(row -> row.getList("entries", UdtValue.class))
+                .map(entry -> toTransaction(accountId, entry))
+                .switchIfEmpty(selectLastTransactions(accountId));
     }
 
     public Mono<Transaction> saveTransaction(Transaction transaction) {
-        return reactiveCqlTemplate.execute("INSERT INTO rinha.transactions(accountId, type, description, date, amount, dateMillis) VALUES (?, ?, ?, ?, ?, ?)",
-                transaction.accountId(),
-                        transaction.type(),
-                        transaction.description(),
-                        transaction.date(),
-                        transaction.amount(),
-                        transaction.dateMillis())
-                .thenReturn(transaction);
+        return saveTransaction(transaction, true);
+    }
+
+    /**
+     * Persists a transaction that is already in {@link RecentTransactions}, as owner mode adds it on acceptance.
+     */
+    public Mono<Transaction> persistAcceptedTransaction(Transaction transaction) {
+        return saveTransaction(transaction, false);
+    }
+
+    private Mono<Transaction> saveTransaction(Transaction transaction, boolean addToRecent) {
+        Mono<?> saved = buckets.isEnabled()
+                ? saveBucketedTransaction(transaction)
+                : bindInsertTransaction(transaction).flatMap(statement -> transactionInsertBatcher.execute(transaction.accountId(), statement));
+        if (addToRecent) {
+            saved = saved.doOnSuccess(inserted -> recentTransactions.add(transaction));
+        }
+        if (statementSnapshot) {
+            saved = saved.then(updateStatementSnapshot(transaction.accountId()));
+        }
+        return saved.thenReturn(transaction);
+    }
+
+    public Mono<KeyPairValue<Long, Long>> findLatestBalanceSnapshot(Integer accountId) {
+        return execute(SELECT_LATEST_BALANCE_SNAPSHOT, accountId)
+                .mapNotNull(AsyncResultSet::one)
+                .map(row -> new KeyPairValue<>(row.getLong("dateMillis"), row.getLong("balance")));
+    }
+
+    public Mono<Void> saveBalanceSnapshot(Integer accountId, long dateMillis, long balance) {
+        log.debug("saveBalanceSnapshot: {}@{}={}", accountId, dateMillis, balance);
+        return execute(INSERT_BALANCE_SNAPSHOT, accountId, dateMillis, balance)
+                .then();
+    }
+
+    public Mono<Void> deleteBalanceSnapshotsBefore(Integer accountId, long dateMillis) {
+        return execute(DELETE_BALANCE_SNAPSHOTS_BEFORE, accountId, dateMillis)
+                .then();
+    }
+
+    public Mono<Long> sumTransactionsBetween(Integer accountId, long afterDateMillis, long untilDateMillis) {
+        var rows = !buckets.isEnabled()
+                ? allRows(execute(SELECT_TRANSACTIONS_BETWEEN, accountId, afterDateMillis, untilDateMillis))
+                : allRows(execute(SELECT_TRANSACTION_BUCKETS_SINCE, accountId, buckets.bucket(afterDateMillis)))
+                .map(row -> row.getInt("bucket"))
+                .filter(bucket -> untilDateMillis == Long.MAX_VALUE || bucket <= buckets.bucket(untilDateMillis))
+                .concatMap(bucket -> allRows(execute(SELECT_BUCKETED_TRANSACTIONS_BETWEEN, accountId, bucket, afterDateMillis, untilDateMillis)));
+        return rows
+                .reduce(0L, (sum, row) -> "d".equals(row.getString("type")) ? sum - row.getInt("amount") : sum + row.getInt("amount"));
     }
 
-    public Mono<Boolean> updateTemporaryAccountBalance(Integer amount, Integer id) {
+    public Mono<Boolean> updateTemporaryAccountBalance(long amount, Integer id) {
         log.debug("updateTemporaryAccountBalance: {}={}", amount, id);
-        return reactiveCqlTemplate.execute("UPDATE rinha.accounts_balance SET temporary = temporary + ? WHERE accountId = ?",
-                (long) amount, id);
+        return execute(UPDATE_TEMPORARY_BALANCE, amount, id)
+                .map(AsyncResultSet::wasApplied);
     }
 
-    public Mono<Boolean> updateAccountBalance(Integer amount, Integer id) {
+    public Mono<Boolean> updateAccountBalance(long amount, Integer id) {
         log.debug("Updating updateAccountBalance: {}={}", amount, id);
-        return reactiveCqlTemplate.execute("UPDATE rinha.accounts_balance SET total = total + ? WHERE accountId = ?",
-                        (long) amount, id);
+        return execute(UPDATE_TOTAL_BALANCE, amount, id)
+                .map(AsyncResultSet::wasApplied);
     }
 
+    public Mono<Boolean> updateAccountBalances(long amount, Integer id) {
+        log.debug("updateAccountBalances: {}={}", amount, id);
+        return execute(UPDATE_BALANCES, amount, amount, id)
+                .map(AsyncResultSet::wasApplied);
+    }
 
     public Mono<KeyPairValue<Long, Long>> totalBalanceByAccountId(Integer id) {
         log.debug("Getting totalBalanceByAccountId: {}", id);
-        return reactiveCqlTemplate.queryForObject("SELECT temporary, total FROM rinha.accounts_balance WHERE accountId = ?",
-                        (row, rowNum) -> new KeyPairValue<>(row.getLong("temporary"), row.getLong("total")),
-                        id);
+        return execute(SELECT_BALANCE, id)
+                .mapNotNull(AsyncResultSet::one)
+                .map(row -> new KeyPairValue<>(row.getLong("temporary"), row.getLong("total")))
+                .defaultIfEmpty(new KeyPairValue<>(0L, 0L));
+    }
+
+    public Flux<KeyPairValue<Integer, Long>> findAllBalances() {
+        return allRows(execute(SELECT_ALL_BALANCES))
+                .map(row -> new KeyPairValue<>(row.getInt("accountId"), row.getLong("total")));
+    }
+
+    public Flux<KeyPairValue<Integer, Integer>> findAllAccounts() {
+        return allRows(execute(SELECT_ALL_ACCOUNTS))
+                .map(row -> new KeyPairValue<>(row.getInt("accountId"), row.getInt("creditLimit")));
+    }
+
+    /**
+     * Claims the key for the request before it is applied, with a lightweight transaction so only one instance
+     * wins. Empty when this call took the claim; otherwise the request the key was claimed for, paired with its
+     * response, or with null while that request is still being applied.
+     */
+    public Mono<KeyPairValue<String, TransactionResponse>> claimIdempotencyKey(Integer accountId, String idempotencyKey, String request, int ttlSeconds) {
+        log.debug("claimIdempotencyKey: {}:{}={}", accountId, idempotencyKey, request);
+        return execute(CLAIM_IDEMPOTENCY_KEY, accountId, idempotencyKey, request, ttlSeconds)
+                .mapNotNull(resultSet -> {
+                    if (resultSet.wasApplied()) {
+                        return null;
+                    }
+                    var row = resultSet.one();
+                    var response = row.isNull("balance") ? null : new TransactionResponse(row.getInt("creditLimit"), row.getLong("balance"));
+                    return new KeyPairValue<>(row.getString("request"), response);
+                });
+    }
+
+    public Mono<Void> saveIdempotentResponse(Integer accountId, String idempotencyKey, String request, TransactionResponse response, int ttlSeconds) {
+        log.debug("saveIdempotentResponse: {}:{}={}", accountId, idempotencyKey, response);
+        return execute(UPDATE_IDEMPOTENT_RESPONSE, ttlSeconds, response.creditLimit(), response.balance(), accountId, idempotencyKey, request)
+                .then();
+    }
+
+    /**
+     * Gives up a claim whose request failed, so the key can be tried again.
+     */
+    public Mono<Void> releaseIdempotencyKey(Integer accountId, String idempotencyKey, String request) {
+        log.debug("releaseIdempotencyKey: {}:{}", accountId, idempotencyKey);
+        return execute(RELEASE_IDEMPOTENCY_KEY, accountId, idempotencyKey, request).then();
+    }
+
+    public Mono<Long> findLedgerBalance(Integer id) {
+        return execute(SELECT_LEDGER_BALANCE, id)
+                .mapNotNull(AsyncResultSet::one)
+                .map(row -> row.getLong("balance"));
+    }
+
+    public Flux<KeyPairValue<Integer, Long>> findAllLedgerBalances() {
+        return allRows(execute(SELECT_ALL_LEDGER_BALANCES))
+                .map(row -> new KeyPairValue<>(row.getInt("accountId"), row.getLong("balance")));
+    }
+
+    public Mono<KeyPairValue<Boolean, Long>> compareAndSetLedgerBalance(Integer id, long expected, long balance) {
+        log.debug("compareAndSetLedgerBalance: {}={}->{}", id, expected, balance);
+        return execute(COMPARE_AND_SET_LEDGER_BALANCE, balance, id, expected)
+                .map(resultSet -> toConditionalResult(resultSet, balance));
+    }
+
+    public Mono<KeyPairValue<Boolean, Long>> insertLedgerBalance(Integer id, long balance) {
+        log.debug("insertLedgerBalance: {}={}", id, balance);
+        return execute(INSERT_LEDGER_BALANCE, id, balance)
+                .map(resultSet -> toConditionalResult(resultSet, balance));
+    }
+
+    private KeyPairValue<Boolean, Long> toConditionalResult(AsyncResultSet resultSet, long balance) {
+        if (resultSet.wasApplied()) {
+            return new KeyPairValue<>(true, balance);
+        }
+        return new KeyPairValue<>(false, resultSet.one().getLong("balance"));
+    }
+
+    private Mono<AsyncResultSet> execute(String cql, Object... values) {
+        return bind(cql, values).flatMap(statements::execute);
+    }
+
+    private Mono<BoundStatement> bind(String cql, Object... values) {
+        if (!EXECUTION_PROFILES.containsKey(cql)) {
+            return statements.bind(cql, values);
+        }
+        return statements.bind(cql, values)
+                .map(statement -> withExecutionProfile(cql, statement));
+    }
+
+    /**
+     * Sets the execution profile of the query class, if it has one. Reads are marked idempotent,
+     * which lets the driver retry them and run speculative executions.
+     */
+    static BoundStatement withExecutionProfile(String cql, BoundStatement statement) {
+        var profile = EXECUTION_PROFILES.get(cql);
+        if (profile == null) {
+            return statement;
+        }
+        return statement.setExecutionProfileName(profile).setIdempotent(cql.startsWith("SELECT"));
+    }
+
+    private Mono<BoundStatement> bindInsertTransaction(Transaction transaction) {
+        var insert = transactionInsert(transaction, buckets, transactionTtlSeconds);
+        return bind(insert.cql(), insert.values());
+    }
+
+    /**
+     * The insert of a transaction into its table (bucketed or not), with the ttl when one is set.
+     * Shared with {@link BlockingRinhaRepository}, so both modes write the same rows.
+     */
+    static TransactionInsert transactionInsert(Transaction transaction, TransactionBuckets buckets, int ttlSeconds) {
+        var values = new ArrayList<>(8);
+        values.add(transaction.accountId());
+        if (buckets.isEnabled()) {
+            values.add(buckets.bucket(transaction.dateMillis()));
+        }
+        values.add(transaction.type());
+        values.add(transaction.description());
+        values.add(transaction.date());
+        values.add(transaction.amount());
+        values.add(transaction.dateMillis());
+        if (ttlSeconds > 0) {
+            values.add(ttlSeconds);
+        }
+        var cql = buckets.isEnabled()
+                ? (ttlSeconds > 0 ? INSERT_BUCKETED_TRANSACTION_WITH_TTL : INSERT_BUCKETED_TRANSACTION)
+                : (ttlSeconds > 0 ? INSERT_TRANSACTION_WITH_TTL : INSERT_TRANSACTION);
+        return new TransactionInsert(cql, values.toArray());
+    }
+
+    record TransactionInsert(String cql, Object[] values) {
+    }
+
+    /**
+     * Inserts into the bucket of the transaction and, the first time this instance writes to that bucket,
+     * adds it to the bucket index of the account.
+     */
+    private Mono<Void> saveBucketedTransaction(Transaction transaction) {
+        var accountId = transaction.accountId();
+        var bucket = buckets.bucket(transaction.dateMillis());
+        var inserted = bindInsertTransaction(transaction)
+                .flatMap(statement -> transactionInsertBatcher.execute(new KeyPairValue<>(accountId, bucket), statement));
+        return Mono.defer(() -> buckets.needsIndex(accountId, bucket)
+                ? Mono.when(inserted, execute(INSERT_TRANSACTION_BUCKET, accountId, bucket)
+                .doOnError(e -> buckets.indexFailed(accountId, bucket)))
+                : inserted);
+    }
+
+    private Flux<Transaction> selectLastTransactions(Integer accountId) {
+        if (buckets.isEnabled()) {
+            return selectLastBucketedTransactions(accountId);
+        }
+        return bind(SELECT_LAST_TRANSACTIONS, accountId)
+                .map(statement -> statement.setPageSize(RecentTransactions.CAPACITY))
+                .flatMap(statements::execute)
+                .flatMapIterable(AsyncResultSet::currentPage)
+                .map(row -> toTransaction(accountId, row));
+    }
+
+    /**
+     * Walks the non-empty buckets of the account newest first, reading ahead one bucket, and stops
+     * as soon as the last ten transactions are found.
+     */
+    private Flux<Transaction> selectLastBucketedTransactions(Integer accountId) {
+        return execute(SELECT_LAST_TRANSACTION_BUCKETS, accountId)
+                .flatMapIterable(AsyncResultSet::currentPage)
+                .map(row -> row.getInt("bucket"))
+                .flatMapSequential(bucket -> bind(SELECT_LAST_BUCKETED_TRANSACTIONS, accountId, bucket)
+                        .map(statement -> statement.setPageSize(RecentTransactions.CAPACITY))
+                        .flatMap(statements::execute)
+                        .flatMapIterable(AsyncResultSet::currentPage), 2)
+                .take(RecentTransactions.CAPACITY)
+                .map(row -> toTransaction(accountId, row));
+    }
+
+    /**
+     * Written with the newest dateMillis of the snapshot as write timestamp, so when two writes of the same
+     * account race the one holding the newest transaction wins instead of whichever arrives last.
+     */
+    private Mono<Void> updateStatementSnapshot(Integer accountId) {
+        return Mono.justOrEmpty(recentTransactions.find(accountId))
+                .switchIfEmpty(Mono.defer(() -> selectLastTransactions(accountId)
+                        .collectList()
+                        .doOnNext(transactions -> recentTransactions.seed(accountId, transactions))))
+                .filter(transactions -> !transactions.isEmpty())
+                .flatMap(transactions -> execute(UPDATE_STATEMENT_SNAPSHOT,
+                        TimeUnit.MILLISECONDS.toMicros(transactions.get(0).dateMillis()),
+                        transactions.stream().map(this::toTransactionEntry).toList(),
+                        accountId))
+                .then();
+    }
+
+    private UdtValue toTransactionEntry(Transaction transaction) {
+        var type = transactionEntryType;
+        if (type == null) {
+            type = session.getMetadata()
+                    .getKeyspace("rinha")
+                    .flatMap(keyspace -> keyspace.getUserDefinedType("transaction_entry"))
+                    .orElseThrow(() -> new IllegalStateException("Type rinha.transaction_entry not found"));
+            transactionEntryType = type;
+        }
+        return type.newValue(transaction.type(),
+                transaction.description(),
+                transaction.date(),
+                transaction.amount(),
+                transaction.dateMillis());
+    }
+
+    private Flux<Row> allRows(Mono<AsyncResultSet> resultSet) {
+        return resultSet
+                .expand(page -> page.hasMorePages() ? Mono.fromCompletionStage(page.fetchNextPage()) : Mono.empty())
+                .flatMapIterable(AsyncResultSet::currentPage);
+    }
+
+    private Transaction toTransaction(Integer accountId, GettableByName data) {
+        return new Transaction(accountId,
+                data.getString("type"),
+                data.getString("description"),
+                data.getInstant("date"),
+                data.getInt("amount"),
+                data.getLong("dateMillis"));
     }
 }
@@ -0,0 +1,56 @@
+package com.example.rinha;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Time buckets of rinha.transactions_by_bucket, an hour or a day derived from dateMillis, so a hot account is spread
+ * over bounded partitions that expire whole. rinha.transaction_buckets lists the buckets of each account that have
+ * transactions, which lets the statement read skip empty buckets. Changing the bucket width leaves the existing
+ * rows unreadable, so it is chosen once per keyspace.
+ */
+@Component
+public class TransactionBuckets {
+    /**
+     * default_time_to_live of rinha.transactions_by_bucket.
+     */
+    static final Duration TABLE_TTL = Duration.ofDays(30);
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    private final Map<Integer, Integer> indexedBuckets = new ConcurrentHashMap<>();
+    private final long bucketMillis;
+
+    public TransactionBuckets(@Value("${rinha.transactions.bucket:none}") String bucket) {
+        this.bucketMillis = switch (bucket) {
+            case "none" -> 0;
+            case "hour" -> HOUR_MILLIS;
+            case "day" -> DAY_MILLIS;
+            default -> throw new IllegalArgumentException("rinha.transactions.bucket must be none, hour or day: " + bucket);
+        };
+    }
+
+    public boolean isEnabled() {
+        return bucketMillis > 0;
+    }
+
+    public int bucket(long dateMillis) {
+        return (int) (dateMillis / bucketMillis);
+    }
+
+    /**
+     * True the first time this instance sees the bucket of the account, which then has to be written to the index.
+     */
+    public boolean needsIndex(Integer accountId, int bucket) {
+        return !Objects.equals(indexedBuckets.put(accountId, bucket), bucket);
+    }
+
+    public void indexFailed(Integer accountId, int bucket) {
+        indexedBuckets.remove(accountId, bucket);
+    }
+}
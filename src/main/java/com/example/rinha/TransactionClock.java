@@ -0,0 +1,22 @@
+package com.example.rinha;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out strictly increasing transaction dates per account: dateMillis is the clustering key of
+ * rinha.transactions, so two transactions of the same account within one millisecond would overwrite each other.
+ */
+@Component
+public class TransactionClock {
+    private final Map<Integer, AtomicLong> lastDateMillis = new ConcurrentHashMap<>();
+
+    public Instant next(Integer accountId) {
+        return Instant.ofEpochMilli(lastDateMillis.computeIfAbsent(accountId, id -> new AtomicLong())
+                .accumulateAndGet(System.currentTimeMillis(), (last, now) -> Math.max(last + 1, now)));
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.rinha;
+
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchType;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Collects inserts for a short window, or up to max-size statements, and sends those of the same partition as a
+ * single UNLOGGED batch through a {@link KeyedBatcher}. Each caller completes when its batch is acknowledged.
+ * <p>
+ * Off by default: every insert waits for the window, and on the request path the account serializer rarely lets
+ * two inserts of the same partition meet in it. It pays off for the owner-mode write-behind and the lwt engine,
+ * which hand over many inserts of the same accounts at once.
+ */
+@Component
+public class TransactionInsertBatcher implements DisposableBean {
+    private final Logger log = LoggerFactory.getLogger(TransactionInsertBatcher.class);
+    private final PreparedStatementCache statements;
+    private final KeyedBatcher<Object, BoundStatement> batcher;
+
+    public TransactionInsertBatcher(PreparedStatementCache statements,
+                                    @Value("${rinha.cql.insert-batch.enabled:false}") boolean enabled,
+                                    @Value("${rinha.cql.insert-batch.window:1ms}") Duration window,
+                                    @Value("${rinha.cql.insert-batch.max-size:32}") int maxSize) {
+        this.statements = statements;
+        this.batcher = enabled ? new KeyedBatcher<>(window, maxSize, this::flush) : null;
+    }
+
+    public Mono<Void> execute(Object partition, BoundStatement statement) {
+        if (batcher == null) {
+            return statements.execute(statement).then();
+        }
+        return batcher.submit(partition, statement);
+    }
+
+    private Mono<?> flush(Object partition, List<BoundStatement> batch) {
+        Statement<?> statement;
+        if (batch.size() == 1) {
+            statement = batch.get(0);
+        } else {
+            var builder = BatchStatement.builder(BatchType.UNLOGGED);
+            batch.forEach(builder::addStatement);
+            statement = builder.build();
+        }
+        log.debug("flush: {} inserts", batch.size());
+        return statements.execute(statement);
+    }
+
+    @Override
+    public void destroy() {
+        if (batcher != null) {
+            batcher.dispose();
+        }
+    }
+}
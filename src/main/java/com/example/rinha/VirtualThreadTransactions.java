@@ -0,0 +1,84 @@
+package com.example.rinha;
+
+import com.example.rinha.model.Transaction;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Blocking execution mode: each request runs on its own virtual thread and talks to Cassandra with the
+ * synchronous driver API. Debits and credits of the same account are serialized with a {@link ReentrantLock},
+ * which parks the virtual thread without pinning its carrier. Balances always live in the counters, as with the
+ * counter engine without coalescing; the settings this mode would silently ignore fail the startup instead.
+ */
+@Component
+@ConditionalOnProperty(name = "rinha.execution-mode", havingValue = "virtual-threads")
+public class VirtualThreadTransactions implements DisposableBean {
+    private final Map<Integer, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private final Scheduler scheduler = Schedulers.fromExecutorService(Executors.newVirtualThreadPerTaskExecutor(), "rinha-virtual");
+    private final BlockingRinhaRepository repository;
+    private final RecentTransactions recentTransactions;
+
+    public VirtualThreadTransactions(BlockingRinhaRepository repository, RecentTransactions recentTransactions,
+                                     @Value("${rinha.balance.engine:counter}") String balanceEngine,
+                                     @Value("${rinha.cql.counter-coalescing.enabled:false}") boolean counterCoalescing,
+                                     @Value("${rinha.statement-snapshot.enabled:false}") boolean statementSnapshot) {
+        if (!balanceEngine.equals("counter") || counterCoalescing || statementSnapshot) {
+            throw new IllegalStateException("rinha.execution-mode=virtual-threads only supports rinha.balance.engine=counter"
+                    + " without rinha.cql.counter-coalescing.enabled and rinha.statement-snapshot.enabled");
+        }
+        this.repository = repository;
+        this.recentTransactions = recentTransactions;
+    }
+
+    public <T> Mono<T> call(Callable<T> task) {
+        return Mono.fromCallable(task).subscribeOn(scheduler);
+    }
+
+    public long apply(Transaction transaction, int limit) {
+        var accountId = transaction.accountId();
+        var lock = locks.computeIfAbsent(accountId, id -> new ReentrantLock());
+        lock.lock();
+        try {
+            var balance = repository.totalBalanceByAccountId(accountId);
+            if (BalanceStore.exceedsLimit(transaction, balance.key(), limit)) {
+                throw BusinessException.limitExceeded();
+            }
+            var amount = transaction.signedAmount();
+            repository.saveTransaction(transaction);
+            repository.updateAccountBalances(amount, accountId);
+            recentTransactions.add(transaction);
+            return balance.value() + amount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long balance(Integer accountId) {
+        return repository.totalBalanceByAccountId(accountId).value();
+    }
+
+    public List<Transaction> lastTransactions(Integer accountId) {
+        return recentTransactions.find(accountId).orElseGet(() -> {
+            var transactions = repository.findLastTransactionsByAccountId(accountId);
+            recentTransactions.seed(accountId, transactions);
+            return transactions;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+}
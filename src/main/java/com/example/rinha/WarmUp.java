@@ -0,0 +1,158 @@
+package com.example.rinha;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Sends rounds of synthetic credits, debits and statement reads for the warm-up account through this instance's own
+ * HTTP port, which prepares the statements, opens the driver connections and fills the caches of the configured
+ * path (and compiles it, on the JVM). {@link CassandraHealth} keeps answering STARTING until a round finishes with
+ * its p99 under target-latency, or max-duration is over. Credits and debits cancel out, so the balance of the
+ * warm-up account stays at zero.
+ */
+@Component
+@ConditionalOnProperty(name = "rinha.warm-up.enabled", havingValue = "true")
+public class WarmUp implements DisposableBean {
+    private static final String CREDIT = "{\"valor\":1,\"tipo\":\"c\",\"descricao\":\"warm-up\"}";
+    private static final String DEBIT = "{\"valor\":1,\"tipo\":\"d\",\"descricao\":\"warm-up\"}";
+
+    private final Logger log = LoggerFactory.getLogger(WarmUp.class);
+    private final CassandraHealth health;
+    private final int accountId;
+    private final int requestsPerRound;
+    private final int concurrency;
+    private final long targetLatencyNanos;
+    private final long maxDurationNanos;
+    private final String clusterSecret;
+    private final ConnectionProvider connectionProvider;
+    private volatile Disposable rounds;
+
+    public WarmUp(CassandraHealth health,
+                  @Value("${rinha.warm-up.account-id:0}") int accountId,
+                  @Value("${rinha.warm-up.requests-per-round:300}") int requestsPerRound,
+                  @Value("${rinha.warm-up.concurrency:4}") int concurrency,
+                  @Value("${rinha.warm-up.target-latency:50ms}") Duration targetLatency,
+                  @Value("${rinha.warm-up.max-duration:20s}") Duration maxDuration,
+                  @Value("${rinha.cluster.secret:}") String clusterSecret) {
+        this.health = health;
+        this.accountId = accountId;
+        this.requestsPerRound = requestsPerRound;
+        this.concurrency = concurrency;
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.maxDurationNanos = maxDuration.toNanos();
+        this.clusterSecret = clusterSecret;
+        this.connectionProvider = ConnectionProvider.builder("rinha-warm-up").maxConnections(concurrency).build();
+        health.warmingUp();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start(ApplicationReadyEvent event) {
+        var port = event.getApplicationContext().getEnvironment().getProperty("local.server.port", Integer.class, 8080);
+        var client = WebClient.builder()
+                .baseUrl("http://localhost:" + port + "/clientes/" + accountId)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                // served here even when another peer owns the warm-up account
+                .defaultHeaders(headers -> {
+                    if (!clusterSecret.isBlank()) {
+                        headers.set(PeerForwarder.FORWARDED_HEADER, clusterSecret);
+                    }
+                })
+                .build();
+        var started = System.nanoTime();
+        rounds = Flux.range(1, Integer.MAX_VALUE)
+                .concatMap(round -> round(client, round))
+                .doOnNext(round -> log.info("Warm-up {}", round))
+                .takeUntil(round -> round.isWarm(targetLatencyNanos) || System.nanoTime() - started > maxDurationNanos)
+                .last()
+                .subscribe(round -> finish(round, started), e -> {
+                    log.warn("Warm-up failed, reporting ready anyway", e);
+                    health.warmedUp();
+                });
+    }
+
+    private Mono<Round> round(WebClient client, int round) {
+        var latencies = new long[requestsPerRound];
+        return Flux.range(0, requestsPerRound)
+                .flatMap(i -> request(client, i).doOnNext(nanos -> latencies[i] = nanos), concurrency)
+                .then(Mono.fromCallable(() -> Round.of(round, latencies)));
+    }
+
+    /**
+     * Latency of the request in nanoseconds, or -1 if it did not succeed.
+     */
+    private Mono<Long> request(WebClient client, int i) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            var request = switch (i % 3) {
+                case 0 -> client.post().uri("/transacoes").contentType(MediaType.APPLICATION_JSON).bodyValue(CREDIT);
+                case 1 -> client.post().uri("/transacoes").contentType(MediaType.APPLICATION_JSON).bodyValue(DEBIT);
+                default -> client.get().uri("/extrato");
+            };
+            return request.exchangeToMono(response -> response.releaseBody()
+                    .thenReturn(response.statusCode().is2xxSuccessful() ? System.nanoTime() - start : -1L));
+        }).onErrorReturn(-1L);
+    }
+
+    private void finish(Round last, long started) {
+        var elapsed = Duration.ofNanos(System.nanoTime() - started);
+        if (last.isWarm(targetLatencyNanos)) {
+            log.info("Warm-up done in {} ms after {} round(s), p99 {} us (target {} us)",
+                    elapsed.toMillis(), last.round(), last.p99Nanos() / 1000, targetLatencyNanos / 1000);
+        } else {
+            log.warn("Warm-up gave up after {} ms and {} round(s), p99 {} us is over the target of {} us",
+                    elapsed.toMillis(), last.round(), last.p99Nanos() / 1000, targetLatencyNanos / 1000);
+        }
+        health.warmedUp();
+    }
+
+    @Override
+    public void destroy() {
+        var rounds = this.rounds;
+        if (rounds != null) {
+            rounds.dispose();
+        }
+        connectionProvider.dispose();
+    }
+
+    record Round(int round, int requests, int failed, long p50Nanos, long p99Nanos, long maxNanos) {
+        static Round of(int round, long[] latencies) {
+            var succeeded = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+            if (succeeded.length == 0) {
+                return new Round(round, latencies.length, latencies.length, -1, -1, -1);
+            }
+            return new Round(round, latencies.length, latencies.length - succeeded.length,
+                    percentile(succeeded, 0.50), percentile(succeeded, 0.99), succeeded[succeeded.length - 1]);
+        }
+
+        boolean isWarm(long targetLatencyNanos) {
+            return failed == 0 && p99Nanos <= targetLatencyNanos;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+        }
+
+        @Override
+        public String toString() {
+            return "round %d: %d requests, %d failed, p50 %d us, p99 %d us, max %d us"
+                    .formatted(round, requests, failed, p50Nanos / 1000, p99Nanos / 1000, maxNanos / 1000);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.rinha;
+
+import com.datastax.oss.driver.api.core.AllNodesFailedException;
+import com.datastax.oss.driver.api.core.DriverTimeoutException;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
+import com.example.rinha.model.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Persists the transactions accepted by the {@link AccountLedger} in the background: every interval it drains
+ * up to batch-size transactions, inserts them and applies a single balance update per account.
+ * Inserts are upserts and are retried; a transaction that still fails goes back to the queue and its delta waits
+ * for it. Balance updates are not idempotent, so they are never retried blindly: a delta that certainly was not
+ * applied is kept for the next flush, and one whose outcome is unknown (a timeout) is logged and not sent again.
+ * The transactions of each account are counted until their delta is settled, so an account is only handed over
+ * to another instance once nothing of it is left here.
+ */
+@Component
+@ConditionalOnProperty(name = "rinha.owner-mode.enabled", havingValue = "true")
+public class WriteBehindQueue implements DisposableBean {
+    private static final Retry RETRY = Retry.backoff(3, Duration.ofMillis(10));
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+    private final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+    private final Queue<Transaction> queue = new ConcurrentLinkedQueue<>();
+    private final Map<Integer, Long> failedDeltas = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> pendingTransactions = new ConcurrentHashMap<>();
+    private final RinhaRepository rinhaRepository;
+    private final BalanceStore balanceStore;
+    private final int batchSize;
+    private final Disposable flusher;
+
+    public WriteBehindQueue(RinhaRepository rinhaRepository, BalanceStore balanceStore, RinhaMetrics metrics,
+                            @Value("${rinha.owner-mode.write-behind.interval:5ms}") Duration interval,
+                            @Value("${rinha.owner-mode.write-behind.batch-size:256}") int batchSize) {
+        this.rinhaRepository = rinhaRepository;
+        this.balanceStore = balanceStore;
+        this.batchSize = batchSize;
+        metrics.gauge("rinha.write-behind.pending", queue, Queue::size);
+        this.flusher = Flux.interval(interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> flush(), 1)
+                .subscribe();
+    }
+
+    public void enqueue(Transaction transaction) {
+        pendingTransactions.merge(transaction.accountId(), 1, Integer::sum);
+        queue.offer(transaction);
+    }
+
+    /**
+     * True while a transaction or a balance delta of the account has not been written yet.
+     */
+    public boolean hasPending(Integer accountId) {
+        return pendingTransactions.containsKey(accountId) || failedDeltas.containsKey(accountId);
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty() && failedDeltas.isEmpty();
+    }
+
+    Mono<Void> flush() {
+        List<Transaction> batch = new ArrayList<>();
+        Transaction transaction;
+        while (batch.size() < batchSize && (transaction = queue.poll()) != null) {
+            batch.add(transaction);
+        }
+        Map<Integer, Long> deltas = new HashMap<>();
+        Map<Integer, Integer> persisted = new HashMap<>();
+        failedDeltas.keySet().forEach(accountId -> {
+            var delta = failedDeltas.remove(accountId);
+            if (delta != null) {
+                deltas.merge(accountId, delta, Long::sum);
+            }
+        });
+        if (batch.isEmpty() && deltas.isEmpty()) {
+            return Mono.empty();
+        }
+        log.debug("flush: {} transactions, {} deltas carried over", batch.size(), deltas.size());
+        return Flux.fromIterable(batch)
+                .flatMap(t -> rinhaRepository.persistAcceptedTransaction(t)
+                        .retryWhen(RETRY)
+                        .onErrorResume(e -> {
+                            log.error("Could not persist transaction {}, queued again", t, e);
+                            queue.offer(t);
+                            return Mono.empty();
+                        }))
+                .doOnNext(t -> {
+                    deltas.merge(t.accountId(), (long) t.signedAmount(), Long::sum);
+                    persisted.merge(t.accountId(), 1, Integer::sum);
+                })
+                .thenMany(Flux.defer(() -> Flux.fromIterable(deltas.entrySet())))
+                .flatMap(delta -> (delta.getValue() == 0 ? Mono.<Void>empty() : balanceStore.add(delta.getKey(), delta.getValue()))
+                        .onErrorResume(e -> {
+                            if (mayHaveBeenApplied(e)) {
+                                log.error("Balance delta {} for account {} may or may not have been applied, not sending it again",
+                                        delta.getValue(), delta.getKey(), e);
+                            } else {
+                                log.warn("Could not persist balance delta {} for account {}, kept for the next flush",
+                                        delta.getValue(), delta.getKey(), e);
+                                failedDeltas.merge(delta.getKey(), delta.getValue(), Long::sum);
+                            }
+                            return Mono.empty();
+                        })
+                        .doFinally(signal -> settled(delta.getKey(), persisted.getOrDefault(delta.getKey(), 0))))
+                .then();
+    }
+
+    /**
+     * The delta of these transactions was written, kept in failedDeltas or given up on; either way they are
+     * no longer waiting in the queue.
+     */
+    private void settled(Integer accountId, int transactions) {
+        if (transactions > 0) {
+            pendingTransactions.computeIfPresent(accountId, (id, pending) -> pending > transactions ? pending - transactions : null);
+        }
+    }
+
+    /**
+     * A write that timed out may have been applied by some replica, which is never the case when no node took it.
+     */
+    private static boolean mayHaveBeenApplied(Throwable e) {
+        if (e instanceof AllNodesFailedException failed) {
+            return failed.getAllErrors().values().stream()
+                    .flatMap(List::stream)
+                    .anyMatch(WriteBehindQueue::mayHaveBeenApplied);
+        }
+        return e instanceof WriteTimeoutException || e instanceof DriverTimeoutException;
+    }
+
+    @Override
+    public void destroy() {
+        flusher.dispose();
+        var deadline = System.nanoTime() + SHUTDOWN_TIMEOUT.toNanos();
+        while (!isEmpty() && System.nanoTime() < deadline) {
+            flush().block(SHUTDOWN_TIMEOUT);
+        }
+        if (!isEmpty()) {
+            log.error("Shutting down with {} transactions and {} balance deltas not persisted", queue.size(), failedDeltas.size());
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.rinha.codec;
+
+import com.example.rinha.dto.BalanceResponse;
+import com.example.rinha.dto.TransactionResponse;
+import com.example.rinha.model.Transaction;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@link TransactionResponse} and {@link BalanceResponse} directly into a (pooled) {@link DataBuffer},
+ * formatting numbers and dates byte by byte.
+ */
+public class RinhaJsonEncoder implements Encoder<Object> {
+    private static final List<MimeType> MIME_TYPES = List.of(MediaType.APPLICATION_JSON);
+    private static final byte[] LIMIT = ascii("{\"limite\":");
+    private static final byte[] BALANCE = ascii(",\"saldo\":");
+    private static final byte[] STATEMENT_TOTAL = ascii("{\"saldo\":{\"total\":");
+    private static final byte[] STATEMENT_DATE = ascii(",\"data_extrato\":");
+    private static final byte[] STATEMENT_LIMIT = ascii(",\"limite\":");
+    private static final byte[] LAST_TRANSACTIONS = ascii("},\"ultimas_transacoes\":[");
+    private static final byte[] TRANSACTION_TYPE = ascii("{\"tipo\":");
+    private static final byte[] TRANSACTION_DESCRIPTION = ascii(",\"descricao\":");
+    private static final byte[] TRANSACTION_DATE = ascii(",\"realizada_em\":");
+    private static final byte[] TRANSACTION_AMOUNT = ascii(",\"valor\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] LONG_MIN_VALUE = ascii("9223372036854775808");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        var type = elementType.toClass();
+        return (type == TransactionResponse.class || type == BalanceResponse.class)
+                && (mimeType == null || MediaType.APPLICATION_JSON.isCompatibleWith(mimeType));
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                   MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  MimeType mimeType, Map<String, Object> hints) {
+        if (value instanceof TransactionResponse response) {
+            var buffer = bufferFactory.allocateBuffer(48);
+            buffer.write(LIMIT);
+            writeNumber(buffer, response.creditLimit());
+            buffer.write(BALANCE);
+            writeNumber(buffer, response.balance());
+            buffer.write((byte) '}');
+            return buffer;
+        }
+        var response = (BalanceResponse) value;
+        var balance = response.balance();
+        var transactions = response.lastTransactions();
+        var buffer = bufferFactory.allocateBuffer(128 + 96 * (transactions == null ? 0 : transactions.size()));
+        buffer.write(STATEMENT_TOTAL);
+        writeNumber(buffer, balance.total());
+        buffer.write(STATEMENT_DATE);
+        writeInstant(buffer, balance.instant() == null ? null : balance.instant().toEpochMilli());
+        buffer.write(STATEMENT_LIMIT);
+        writeNumber(buffer, balance.creditLimit());
+        buffer.write(LAST_TRANSACTIONS);
+        if (transactions != null) {
+            for (int i = 0; i < transactions.size(); i++) {
+                if (i > 0) {
+                    buffer.write((byte) ',');
+                }
+                writeTransaction(buffer, transactions.get(i));
+            }
+        }
+        buffer.write((byte) ']');
+        buffer.write((byte) '}');
+        return buffer;
+    }
+
+    @Override
+    public List<MimeType> getEncodableMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    private static void writeTransaction(DataBuffer buffer, Transaction transaction) {
+        buffer.write(TRANSACTION_TYPE);
+        writeString(buffer, transaction.type());
+        buffer.write(TRANSACTION_DESCRIPTION);
+        writeString(buffer, transaction.description());
+        buffer.write(TRANSACTION_DATE);
+        writeInstant(buffer, transaction.dateMillis() != null ? transaction.dateMillis() : toEpochMilli(transaction.date()));
+        buffer.write(TRANSACTION_AMOUNT);
+        writeNumber(buffer, transaction.amount());
+        buffer.write((byte) '}');
+    }
+
+    private static Long toEpochMilli(Instant instant) {
+        return instant == null ? null : instant.toEpochMilli();
+    }
+
+    static void writeNumber(DataBuffer buffer, Number number) {
+        if (number == null) {
+            buffer.write(NULL);
+            return;
+        }
+        long value = number.longValue();
+        if (value < 0) {
+            buffer.write((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                buffer.write(LONG_MIN_VALUE);
+                return;
+            }
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            buffer.write((byte) ('0' + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    static void writeInstant(DataBuffer buffer, Long epochMilli) {
+        if (epochMilli == null) {
+            buffer.write(NULL);
+            return;
+        }
+        long millis = epochMilli;
+        long epochDay = Math.floorDiv(millis, MILLIS_PER_DAY);
+        long millisOfDay = Math.floorMod(millis, MILLIS_PER_DAY);
+        long z = epochDay + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        long month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        buffer.write((byte) '"');
+        writeDigits(buffer, year, 4);
+        buffer.write((byte) '-');
+        writeDigits(buffer, month, 2);
+        buffer.write((byte) '-');
+        writeDigits(buffer, day, 2);
+        buffer.write((byte) 'T');
+        writeDigits(buffer, millisOfDay / 3_600_000, 2);
+        buffer.write((byte) ':');
+        writeDigits(buffer, millisOfDay / 60_000 % 60, 2);
+        buffer.write((byte) ':');
+        writeDigits(buffer, millisOfDay / 1_000 % 60, 2);
+        buffer.write((byte) '.');
+        writeDigits(buffer, millisOfDay % 1_000, 3);
+        buffer.write((byte) 'Z');
+        buffer.write((byte) '"');
+    }
+
+    private static void writeDigits(DataBuffer buffer, long value, int digits) {
+        long divisor = 1;
+        for (int i = 1; i < digits; i++) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            buffer.write((byte) ('0' + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    static void writeString(DataBuffer buffer, String value) {
+        if (value == null) {
+            buffer.write(NULL);
+            return;
+        }
+        buffer.write((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.write((byte) '\\');
+                buffer.write((byte) c);
+            } else if (c < 0x20) {
+                buffer.write((byte) '\\');
+                buffer.write((byte) 'u');
+                buffer.write((byte) '0');
+                buffer.write((byte) '0');
+                buffer.write(HEX[c >> 4]);
+                buffer.write(HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                buffer.write((byte) c);
+            } else if (c < 0x800) {
+                buffer.write((byte) (0xC0 | (c >> 6)));
+                buffer.write((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.write((byte) (0xF0 | (codePoint >> 18)));
+                buffer.write((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.write((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.write((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.write((byte) '?');
+            } else {
+                buffer.write((byte) (0xE0 | (c >> 12)));
+                buffer.write((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.write((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.write((byte) '"');
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
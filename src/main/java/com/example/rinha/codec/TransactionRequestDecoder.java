@@ -0,0 +1,315 @@
+package com.example.rinha.codec;
+
+import com.example.rinha.BusinessException;
+import com.example.rinha.dto.TransactionRequest;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses {@code {"valor","tipo","descricao"}} straight from the request {@link DataBuffer},
+ * rejecting an invalid payload as soon as the offending value is read.
+ */
+public class TransactionRequestDecoder implements Decoder<TransactionRequest> {
+    private static final int MAX_BODY_SIZE = 16 * 1024;
+    private static final int MAX_DESCRIPTION_LENGTH = 10;
+    private static final byte[] AMOUNT = "valor".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE = "tipo".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DESCRIPTION = "descricao".getBytes(StandardCharsets.US_ASCII);
+    private static final List<MimeType> MIME_TYPES = List.of(MediaType.APPLICATION_JSON);
+
+    @Override
+    public boolean canDecode(ResolvableType elementType, MimeType mimeType) {
+        return TransactionRequest.class == elementType.toClass()
+                && (mimeType == null || MediaType.APPLICATION_JSON.isCompatibleWith(mimeType));
+    }
+
+    @Override
+    public Flux<TransactionRequest> decode(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                                           MimeType mimeType, Map<String, Object> hints) {
+        return Flux.from(decodeToMono(inputStream, elementType, mimeType, hints));
+    }
+
+    @Override
+    public Mono<TransactionRequest> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType,
+                                                 MimeType mimeType, Map<String, Object> hints) {
+        return DataBufferUtils.join(inputStream, MAX_BODY_SIZE)
+                .map(buffer -> {
+                    try {
+                        return decode(buffer, elementType, mimeType, hints);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .switchIfEmpty(Mono.error(TransactionRequestDecoder::invalid))
+                .onErrorMap(DataBufferLimitException.class, e -> invalid());
+    }
+
+    @Override
+    public TransactionRequest decode(DataBuffer buffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints) {
+        return new Parser(buffer).parse();
+    }
+
+    @Override
+    public List<MimeType> getDecodableMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    private static BusinessException invalid() {
+        return BusinessException.invalidPayload();
+    }
+
+    private static final class Parser {
+        private final DataBuffer buffer;
+        private final int end;
+        private int position;
+
+        Parser(DataBuffer buffer) {
+            this.buffer = buffer;
+            this.position = buffer.readPosition();
+            this.end = buffer.writePosition();
+        }
+
+        TransactionRequest parse() {
+            Integer amount = null;
+            String type = null;
+            String description = null;
+            expect('{');
+            if (peek() == '}') {
+                throw invalid();
+            }
+            int separator;
+            do {
+                int keyStart = stringStart();
+                int keyEnd = skipString();
+                expect(':');
+                if (matches(keyStart, keyEnd, AMOUNT)) {
+                    amount = readAmount();
+                } else if (matches(keyStart, keyEnd, TYPE)) {
+                    type = readType();
+                } else if (matches(keyStart, keyEnd, DESCRIPTION)) {
+                    description = readDescription();
+                } else {
+                    skipValue(0);
+                }
+            } while ((separator = next()) == ',');
+            if (separator != '}' || peek() != -1) {
+                throw invalid();
+            }
+            if (amount == null || type == null || description == null) {
+                throw invalid();
+            }
+            return new TransactionRequest(amount, type, description);
+        }
+
+        private Integer readAmount() {
+            if (peek() == '-') {
+                throw invalid();
+            }
+            if (peek() < '0' || peek() > '9') {
+                throw invalid();
+            }
+            long amount = 0;
+            while (position < end) {
+                byte b = buffer.getByte(position);
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                amount = amount * 10 + (b - '0');
+                if (amount > Integer.MAX_VALUE) {
+                    throw invalid();
+                }
+                position++;
+            }
+            if (position < end) {
+                byte b = buffer.getByte(position);
+                if (b == '.' || b == 'e' || b == 'E') {
+                    throw invalid();
+                }
+            }
+            return (int) amount;
+        }
+
+        private String readType() {
+            int start = stringStart();
+            int stop = skipString();
+            if (stop - start == 1) {
+                byte b = buffer.getByte(start);
+                if (b == 'c') {
+                    return "c";
+                }
+                if (b == 'd') {
+                    return "d";
+                }
+            }
+            throw invalid();
+        }
+
+        private String readDescription() {
+            int start = stringStart();
+            int stop = skipString();
+            if (stop == start || stop - start > MAX_DESCRIPTION_LENGTH * 6) {
+                throw invalid();
+            }
+            var description = decodeString(start, stop);
+            if (description.length() > MAX_DESCRIPTION_LENGTH || description.isBlank()) {
+                throw invalid();
+            }
+            return description;
+        }
+
+        private String decodeString(int start, int stop) {
+            boolean escaped = false;
+            for (int i = start; i < stop; i++) {
+                if (buffer.getByte(i) == '\\') {
+                    escaped = true;
+                    break;
+                }
+            }
+            var raw = buffer.toString(start, stop - start, StandardCharsets.UTF_8);
+            if (!escaped) {
+                return raw;
+            }
+            var builder = new StringBuilder(raw.length());
+            for (int i = 0; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+                char escape = raw.charAt(++i);
+                switch (escape) {
+                    case '"', '\\', '/' -> builder.append(escape);
+                    case 'b' -> builder.append('\b');
+                    case 'f' -> builder.append('\f');
+                    case 'n' -> builder.append('\n');
+                    case 'r' -> builder.append('\r');
+                    case 't' -> builder.append('\t');
+                    case 'u' -> {
+                        if (i + 4 >= raw.length()) {
+                            throw invalid();
+                        }
+                        try {
+                            builder.append((char) Integer.parseInt(raw, i + 1, i + 5, 16));
+                        } catch (NumberFormatException nfe) {
+                            throw invalid();
+                        }
+                        i += 4;
+                    }
+                    default -> throw invalid();
+                }
+            }
+            return builder.toString();
+        }
+
+        private int stringStart() {
+            expect('"');
+            return position;
+        }
+
+        private int skipString() {
+            while (position < end) {
+                byte b = buffer.getByte(position++);
+                if (b == '\\') {
+                    position++;
+                } else if (b == '"') {
+                    return position - 1;
+                } else if (b >= 0 && b < 0x20) {
+                    throw invalid();
+                }
+            }
+            throw invalid();
+        }
+
+        private void skipValue(int depth) {
+            if (depth > 32) {
+                throw invalid();
+            }
+            int b = peek();
+            if (b == '"') {
+                position++;
+                skipString();
+            } else if (b == '{' || b == '[') {
+                char close = b == '{' ? '}' : ']';
+                position++;
+                if (peek() == close) {
+                    position++;
+                    return;
+                }
+                int separator;
+                do {
+                    if (close == '}') {
+                        stringStart();
+                        skipString();
+                        expect(':');
+                    }
+                    skipValue(depth + 1);
+                } while ((separator = next()) == ',');
+                if (separator != close) {
+                    throw invalid();
+                }
+            } else {
+                int start = position;
+                while (position < end) {
+                    byte c = buffer.getByte(position);
+                    if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) {
+                        break;
+                    }
+                    position++;
+                }
+                if (position == start) {
+                    throw invalid();
+                }
+            }
+        }
+
+        private boolean matches(int start, int stop, byte[] name) {
+            if (stop - start != name.length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (buffer.getByte(start + i) != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw invalid();
+            }
+        }
+
+        private int next() {
+            skipWhitespace();
+            return position < end ? buffer.getByte(position++) : -1;
+        }
+
+        private int peek() {
+            skipWhitespace();
+            return position < end ? buffer.getByte(position) : -1;
+        }
+
+        private void skipWhitespace() {
+            while (position < end && isWhitespace(buffer.getByte(position))) {
+                position++;
+            }
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+        }
+    }
+}
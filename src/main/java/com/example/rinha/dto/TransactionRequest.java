@@ -2,7 +2,6 @@ package com.example.rinha.dto;
 
 import com.example.rinha.BusinessException;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import org.springframework.http.HttpStatus;
 import org.springframework.util.StringUtils;
 
 public record TransactionRequest(@JsonProperty("valor") Integer amount,
@@ -10,13 +9,13 @@ public record TransactionRequest(@JsonProperty("valor") Integer amount,
                                  @JsonProperty("descricao") String description) {
     public TransactionRequest {
         if (amount == null || amount < 0) {
-            throw new BusinessException(HttpStatus.UNPROCESSABLE_ENTITY);
+            throw BusinessException.invalidPayload();
         }
-        if (!type.equals("c") && !type.equals("d")) {
-            throw new BusinessException(HttpStatus.UNPROCESSABLE_ENTITY);
+        if (!"c".equals(type) && !"d".equals(type)) {
+            throw BusinessException.invalidPayload();
         }
         if (!StringUtils.hasText(description) || description.length() > 10) {
-            throw new BusinessException(HttpStatus.UNPROCESSABLE_ENTITY);
+            throw BusinessException.invalidPayload();
         }
     }
 }
@@ -20,4 +20,8 @@ public record Transaction(@JsonIgnore Integer accountId,
                 transactionRequest.amount(),
                 date.toEpochMilli());
     }
+
+    public int signedAmount() {
+        return type.equals("d") ? -amount : amount;
+    }
 }
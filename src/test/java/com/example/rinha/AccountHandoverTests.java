@@ -0,0 +1,120 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.KeyPairValue;
+import com.example.rinha.model.Transaction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AccountHandoverTests {
+    private static final int ACCOUNT_ID = 1;
+    private static final int LIMIT = 1000;
+
+    private final InMemoryBalanceStore balanceStore = new InMemoryBalanceStore();
+    private final Sinks.One<Transaction> insert = Sinks.one();
+    private final RinhaRepository rinhaRepository = mock(RinhaRepository.class);
+    private final RinhaMetrics metrics = new RinhaMetrics(new SimpleMeterRegistry());
+    private final WriteBehindQueue oldOwnerQueue = new WriteBehindQueue(rinhaRepository, balanceStore, metrics, Duration.ofHours(1), 256);
+    private final WriteBehindQueue newOwnerQueue = new WriteBehindQueue(rinhaRepository, balanceStore, metrics, Duration.ofHours(1), 256);
+
+    @AfterEach
+    void tearDown() {
+        oldOwnerQueue.destroy();
+        newOwnerQueue.destroy();
+    }
+
+    @Test
+    void movedAccountIsServedOnlyOnceItsQueuedWritesArePersisted() {
+        when(rinhaRepository.persistAcceptedTransaction(any())).thenReturn(insert.asMono());
+        var peerForwarder = mock(PeerForwarder.class);
+        when(peerForwarder.handedOver(anyInt())).thenReturn(Mono.fromSupplier(() -> !oldOwnerQueue.hasPending(ACCOUNT_ID)));
+        var newOwner = new AccountLedger(balanceStore, new AccountOwnership(0, 1, "", new String[0], 64), newOwnerQueue,
+                new RecentTransactions(true), mock(BalanceSnapshots.class), Optional.of(peerForwarder), false);
+
+        // the old owner accepted a debit of the whole limit, which still sits in its write-behind
+        var debit = transaction("d", LIMIT);
+        oldOwnerQueue.enqueue(debit);
+        oldOwnerQueue.flush().subscribe();
+
+        assertThat(oldOwnerQueue.hasPending(ACCOUNT_ID)).isTrue();
+        assertThatThrownBy(() -> newOwner.apply(transaction("d", 1), LIMIT).block())
+                .isInstanceOfSatisfying(BusinessException.class, e -> assertThat(e.getStatusCode()).isEqualTo(503));
+        assertThat(balanceStore.balances).isEmpty();
+
+        insert.tryEmitValue(debit);
+
+        assertThat(oldOwnerQueue.hasPending(ACCOUNT_ID)).isFalse();
+        assertThat(newOwner.balance(ACCOUNT_ID).block()).isEqualTo(-LIMIT);
+        assertThatThrownBy(() -> newOwner.apply(transaction("d", 1), LIMIT).block())
+                .isInstanceOfSatisfying(BusinessException.class, e -> assertThat(e.getStatusCode()).isEqualTo(422));
+    }
+
+    @Test
+    void deltaKeptForTheNextFlushStaysPending() {
+        when(rinhaRepository.persistAcceptedTransaction(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        balanceStore.failNextAdd = true;
+
+        oldOwnerQueue.enqueue(transaction("c", 10));
+        oldOwnerQueue.flush().block();
+
+        assertThat(oldOwnerQueue.hasPending(ACCOUNT_ID)).isTrue();
+
+        oldOwnerQueue.flush().block();
+
+        assertThat(oldOwnerQueue.hasPending(ACCOUNT_ID)).isFalse();
+        assertThat(balanceStore.balances).containsEntry(ACCOUNT_ID, 10L);
+    }
+
+    private static Transaction transaction(String type, int amount) {
+        var now = Instant.now();
+        return new Transaction(ACCOUNT_ID, type, "handover", now, amount, now.toEpochMilli());
+    }
+
+    private static final class InMemoryBalanceStore implements BalanceStore {
+        private final Map<Integer, Long> balances = new ConcurrentHashMap<>();
+        private volatile boolean failNextAdd;
+
+        @Override
+        public Mono<Long> balance(Integer accountId) {
+            return Mono.fromSupplier(() -> balances.getOrDefault(accountId, 0L));
+        }
+
+        @Override
+        public Mono<Long> apply(Transaction transaction, int limit) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Mono<Void> add(Integer accountId, long delta) {
+            return Mono.defer(() -> {
+                if (failNextAdd) {
+                    failNextAdd = false;
+                    return Mono.error(new IllegalStateException("not applied"));
+                }
+                balances.merge(accountId, delta, Long::sum);
+                return Mono.empty();
+            });
+        }
+
+        @Override
+        public Flux<KeyPairValue<Integer, Long>> findAll() {
+            return Flux.empty();
+        }
+    }
+}
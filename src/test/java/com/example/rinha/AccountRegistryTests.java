@@ -0,0 +1,52 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.KeyPairValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AccountRegistryTests {
+    private final RinhaRepository rinhaRepository = mock(RinhaRepository.class);
+    private final AtomicInteger attempts = new AtomicInteger();
+    private AccountRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        registry.destroy();
+    }
+
+    @Test
+    void retriesTheFirstLoadUntilItSucceeds() {
+        when(rinhaRepository.findAllAccounts()).thenReturn(Flux.defer(() -> attempts.incrementAndGet() < 3
+                ? Flux.error(new IllegalStateException("cassandra is starting"))
+                : Flux.just(new KeyPairValue<>(1, 100000))));
+        registry = new AccountRegistry(rinhaRepository, Duration.ofHours(1), Duration.ofSeconds(10));
+
+        registry.afterPropertiesSet();
+
+        assertThat(registry.limit(1)).isEqualTo(100000);
+        assertThat(registry.limit(2)).isEqualTo(AccountRegistry.UNKNOWN);
+    }
+
+    @Test
+    void failsStartupOnceTheLoadTimeoutIsOver() {
+        when(rinhaRepository.findAllAccounts()).thenReturn(Flux.defer(() -> {
+            attempts.incrementAndGet();
+            return Flux.error(new IllegalStateException("cassandra is down"));
+        }));
+        registry = new AccountRegistry(rinhaRepository, Duration.ofHours(1), Duration.ofMillis(500));
+
+        assertThatThrownBy(registry::afterPropertiesSet)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Could not load the accounts from rinha.accounts within PT0.5S");
+        assertThat(attempts.get()).isGreaterThan(1);
+    }
+}
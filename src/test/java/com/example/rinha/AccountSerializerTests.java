@@ -0,0 +1,106 @@
+package com.example.rinha;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccountSerializerTests {
+    private final AccountSerializer serializer = new AccountSerializer(new RinhaMetrics(new SimpleMeterRegistry()));
+
+    @Test
+    void drainsThousandsOfSynchronousTasksWithoutGrowingTheStack() {
+        var first = Sinks.<Integer>one();
+        var blocked = serializer.submit(1, first::asMono).toFuture();
+        var completed = new AtomicInteger();
+        for (int i = 0; i < 100_000; i++) {
+            var value = i;
+            serializer.submit(1, () -> Mono.just(value)).subscribe(v -> completed.incrementAndGet());
+        }
+
+        assertThat(serializer.pending(1)).isEqualTo(100_001);
+
+        first.tryEmitValue(-1);
+
+        assertThat(blocked).isCompletedWithValue(-1);
+        assertThat(completed).hasValue(100_000);
+        assertThat(serializer.pending(1)).isZero();
+    }
+
+    @Test
+    void keepsTheOrderOfEachSubmitterAndRunsOneTaskAtATime() throws Exception {
+        var threads = 8;
+        var tasksPerThread = 500;
+        var running = new AtomicInteger();
+        var overlapped = new AtomicBoolean();
+        var executed = Collections.synchronizedList(new ArrayList<int[]>());
+        var done = new CountDownLatch(threads * tasksPerThread);
+        var start = new CountDownLatch(1);
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                var thread = t;
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < tasksPerThread; i++) {
+                        var sequence = i;
+                        serializer.submit(1, () -> Mono.fromRunnable(() -> {
+                                    if (running.incrementAndGet() != 1) {
+                                        overlapped.set(true);
+                                    }
+                                    executed.add(new int[]{thread, sequence});
+                                    running.decrementAndGet();
+                                })
+                                .subscribeOn(Schedulers.parallel())
+                                .then(Mono.just(sequence)))
+                                .subscribe(v -> done.countDown());
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            assertThat(done.await(30, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(overlapped).isFalse();
+        var lastSequence = new int[threads];
+        Arrays.fill(lastSequence, -1);
+        for (int[] task : List.copyOf(executed)) {
+            assertThat(task[1]).as("task of submitter %d", task[0]).isEqualTo(lastSequence[task[0]] + 1);
+            lastSequence[task[0]] = task[1];
+        }
+        assertThat(executed).hasSize(threads * tasksPerThread);
+    }
+
+    @Test
+    void skipsATaskCancelledBeforeItsTurn() {
+        var first = Sinks.<Integer>one();
+        serializer.submit(1, first::asMono).subscribe();
+        var cancelledRan = new AtomicBoolean();
+        var cancelled = serializer.submit(1, () -> Mono.fromSupplier(() -> {
+            cancelledRan.set(true);
+            return 2;
+        })).subscribe();
+        var next = serializer.submit(1, () -> Mono.just(3)).toFuture();
+
+        cancelled.dispose();
+        first.tryEmitValue(1);
+
+        assertThat(cancelledRan).isFalse();
+        assertThat(next).succeedsWithin(Duration.ofSeconds(1)).isEqualTo(3);
+        assertThat(serializer.pending(1)).isZero();
+    }
+}
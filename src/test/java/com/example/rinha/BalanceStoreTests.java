@@ -0,0 +1,31 @@
+package com.example.rinha;
+
+import com.example.rinha.model.Transaction;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BalanceStoreTests {
+
+    @ParameterizedTest
+    @CsvSource({
+            // type, amount, balance, limit, exceeded
+            "d, 1500, 1000, 1000, false",
+            "d, 2000, 1000, 1000, false",
+            "d, 2001, 1000, 1000, true",
+            "d, 1000, 0, 1000, false",
+            "d, 1001, 0, 1000, true",
+            "d, 1, -1000, 1000, true",
+            "d, 501, -500, 1000, true",
+            "d, 500, -500, 1000, false",
+            "c, 99999, -1000, 1000, false"
+    })
+    void debitIsRejectedOnlyBelowMinusTheLimit(String type, int amount, long balance, int limit, boolean exceeded) {
+        var transaction = new Transaction(1, type, "teste", Instant.EPOCH, amount, 0L);
+
+        assertThat(BalanceStore.exceedsLimit(transaction, balance, limit)).isEqualTo(exceeded);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.rinha;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimiterTests {
+    private static final long NO_COOLDOWN = 0;
+    private static final long LONG_COOLDOWN = Duration.ofHours(1).toNanos();
+
+    @Test
+    void refusesRequestsAboveTheLimit() {
+        var limiter = new ConcurrencyLimiter(2, 1, 10, 0.5, LONG_COOLDOWN);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.inFlight()).isEqualTo(2);
+
+        limiter.release(false);
+
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void growsByOnePerWindowWhileAtLeastHalfIsInUse() {
+        var limiter = new ConcurrencyLimiter(10, 1, 100, 0.5, LONG_COOLDOWN);
+        holdPermits(limiter, 9);
+
+        successes(limiter, 10);
+
+        assertThat(limiter.limit()).isEqualTo(10);
+
+        successes(limiter, 2);
+
+        assertThat(limiter.limit()).isEqualTo(11);
+    }
+
+    @Test
+    void doesNotGrowWhileMostOfTheLimitIsIdle() {
+        var limiter = new ConcurrencyLimiter(10, 1, 100, 0.5, LONG_COOLDOWN);
+
+        successes(limiter, 1000);
+
+        assertThat(limiter.limit()).isEqualTo(10);
+    }
+
+    @Test
+    void neverGrowsAboveTheMaximum() {
+        var limiter = new ConcurrencyLimiter(10, 1, 12, 0.5, LONG_COOLDOWN);
+        holdPermits(limiter, 9);
+
+        successes(limiter, 1000);
+
+        assertThat(limiter.limit()).isEqualTo(12);
+    }
+
+    @Test
+    void backsOffOnOverloadDownToTheMinimum() throws InterruptedException {
+        var limiter = new ConcurrencyLimiter(100, 20, 100, 0.5, NO_COOLDOWN);
+
+        Thread.sleep(1);
+        overload(limiter);
+
+        assertThat(limiter.limit()).isEqualTo(50);
+
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(1);
+            overload(limiter);
+        }
+
+        assertThat(limiter.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void backsOffAtMostOncePerCooldown() {
+        var limiter = new ConcurrencyLimiter(100, 1, 100, 0.5, LONG_COOLDOWN);
+
+        for (int i = 0; i < 10; i++) {
+            overload(limiter);
+        }
+
+        assertThat(limiter.limit()).isEqualTo(100);
+    }
+
+    private static void holdPermits(ConcurrencyLimiter limiter, int permits) {
+        for (int i = 0; i < permits; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+        }
+    }
+
+    private static void successes(ConcurrencyLimiter limiter, int requests) {
+        for (int i = 0; i < requests; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+            limiter.release(false);
+        }
+    }
+
+    private static void overload(ConcurrencyLimiter limiter) {
+        assertThat(limiter.tryAcquire()).isTrue();
+        limiter.release(true);
+    }
+}
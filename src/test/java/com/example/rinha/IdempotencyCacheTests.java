@@ -0,0 +1,91 @@
+package com.example.rinha;
+
+import com.example.rinha.dto.KeyPairValue;
+import com.example.rinha.dto.TransactionRequest;
+import com.example.rinha.dto.TransactionResponse;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdempotencyCacheTests {
+    private static final TransactionRequest BODY = new TransactionRequest(100, "d", "teste");
+    private static final TransactionResponse RESPONSE = new TransactionResponse(1000, -100L);
+
+    private final RinhaRepository rinhaRepository = mock(RinhaRepository.class);
+    private final IdempotencyCache cache = new IdempotencyCache(rinhaRepository, true, Duration.ofMinutes(10), 100);
+    private final AtomicInteger applied = new AtomicInteger();
+
+    @Test
+    void appliesOnceTheKeyIsClaimedAndStoresTheResponse() {
+        when(rinhaRepository.claimIdempotencyKey(anyInt(), anyString(), anyString(), anyInt())).thenReturn(Mono.empty());
+        when(rinhaRepository.saveIdempotentResponse(anyInt(), anyString(), anyString(), any(), anyInt())).thenReturn(Mono.empty());
+
+        assertThat(execute(BODY).block()).isEqualTo(RESPONSE);
+        assertThat(execute(BODY).block()).isEqualTo(RESPONSE);
+
+        assertThat(applied).hasValue(1);
+        verify(rinhaRepository).saveIdempotentResponse(1, "key", "100:d:teste", RESPONSE, 600);
+    }
+
+    @Test
+    void keyClaimedByAnotherInstanceIsNotAppliedAgain() {
+        when(rinhaRepository.claimIdempotencyKey(anyInt(), anyString(), anyString(), anyInt()))
+                .thenReturn(Mono.just(new KeyPairValue<>("100:d:teste", null)))
+                .thenReturn(Mono.just(new KeyPairValue<>("100:d:teste", RESPONSE)));
+
+        assertThatThrownBy(() -> execute(BODY).block())
+                .isInstanceOfSatisfying(BusinessException.class, e -> assertThat(e.getStatusCode()).isEqualTo(409));
+        assertThat(execute(BODY).block()).isEqualTo(RESPONSE);
+
+        assertThat(applied).hasValue(0);
+    }
+
+    @Test
+    void bodiesWithTheSameHashAreStillToldApart() {
+        // "Aa" and "BB" share their String.hashCode, so a hash of the fields could not tell these bodies apart
+        when(rinhaRepository.claimIdempotencyKey(anyInt(), anyString(), anyString(), anyInt()))
+                .thenReturn(Mono.just(new KeyPairValue<>("100:d:Aa", RESPONSE)));
+
+        assertThatThrownBy(() -> execute(new TransactionRequest(100, "d", "BB")).block())
+                .isInstanceOfSatisfying(BusinessException.class, e -> assertThat(e.getStatusCode()).isEqualTo(422));
+        assertThat(applied).hasValue(0);
+    }
+
+    @Test
+    void failedRequestReleasesTheKey() {
+        when(rinhaRepository.claimIdempotencyKey(anyInt(), anyString(), anyString(), anyInt())).thenReturn(Mono.empty());
+        when(rinhaRepository.releaseIdempotencyKey(anyInt(), anyString(), anyString())).thenReturn(Mono.empty());
+
+        assertThatThrownBy(() -> cache.execute(1, "key", BODY, () -> Mono.error(BusinessException.unavailable())).block())
+                .isSameAs(BusinessException.unavailable());
+
+        verify(rinhaRepository).releaseIdempotencyKey(1, "key", "100:d:teste");
+        verify(rinhaRepository, never()).saveIdempotentResponse(anyInt(), anyString(), anyString(), any(), anyInt());
+    }
+
+    @Test
+    void canonicalBodyKeepsEveryField() {
+        assertThat(IdempotencyCache.canonical(BODY)).isEqualTo("100:d:teste");
+        assertThat(IdempotencyCache.canonical(new TransactionRequest(10, "d", "0:teste")))
+                .isNotEqualTo(IdempotencyCache.canonical(new TransactionRequest(100, "d", "teste")));
+    }
+
+    private Mono<TransactionResponse> execute(TransactionRequest body) {
+        return cache.execute(1, "key", body, () -> Mono.fromSupplier(() -> {
+            applied.incrementAndGet();
+            return RESPONSE;
+        }));
+    }
+}
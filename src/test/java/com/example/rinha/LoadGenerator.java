@@ -0,0 +1,147 @@
+package com.example.rinha;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+/**
+ * Replays the Rinha traffic mix (credits, debits, statements and invalid payloads) at a fixed rate
+ * against a running instance and records the latency of each endpoint in an HDR histogram.
+ * <p>
+ * Standalone usage: {@code LoadGenerator <base-url> <rps> <concurrency> <duration-seconds>}.
+ */
+public class LoadGenerator {
+    static final int ACCOUNTS = 5;
+    private static final String[] INVALID_PAYLOADS = {
+            "{\"valor\": 1.2, \"tipo\": \"d\", \"descricao\": \"devolve\"}",
+            "{\"valor\": 1, \"tipo\": \"x\", \"descricao\": \"devolve\"}",
+            "{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"123456789 e mais um pouco\"}",
+            "{\"valor\": 1, \"tipo\": \"c\", \"descricao\": null}"
+    };
+
+    private final WebClient client;
+    private final int requestsPerSecond;
+    private final int concurrency;
+    private final Duration duration;
+
+    public LoadGenerator(String baseUrl, int requestsPerSecond, int concurrency, Duration duration) {
+        this.client = WebClient.builder().baseUrl(baseUrl).build();
+        this.requestsPerSecond = requestsPerSecond;
+        this.concurrency = concurrency;
+        this.duration = duration;
+    }
+
+    public static void main(String[] args) {
+        var report = new LoadGenerator(args.length > 0 ? args[0] : "http://localhost:9999",
+                args.length > 1 ? Integer.parseInt(args[1]) : 500,
+                args.length > 2 ? Integer.parseInt(args[2]) : 64,
+                Duration.ofSeconds(args.length > 3 ? Long.parseLong(args[3]) : 30))
+                .run();
+        report.print(System.out);
+    }
+
+    public Report run() {
+        var report = new Report();
+        var ticks = duration.toMillis();
+        Flux.interval(Duration.ofMillis(1))
+                .onBackpressureDrop(tick -> report.droppedTicks.incrementAndGet())
+                .take(ticks)
+                .flatMapIterable(tick -> LongStream.range(tick * requestsPerSecond / 1000, (tick + 1) * requestsPerSecond / 1000).boxed().toList())
+                .flatMap(sequence -> send(report), concurrency)
+                .blockLast(duration.plusSeconds(30));
+        return report;
+    }
+
+    private Mono<Void> send(Report report) {
+        var random = ThreadLocalRandom.current();
+        var accountId = random.nextInt(1, ACCOUNTS + 1);
+        var kind = random.nextInt(100);
+        if (kind < 40) {
+            return post(report, "credit", accountId, "{\"valor\": %d, \"tipo\": \"c\", \"descricao\": \"credito\"}".formatted(random.nextInt(1, 10_000)));
+        }
+        if (kind < 80) {
+            return post(report, "debit", accountId, "{\"valor\": %d, \"tipo\": \"d\", \"descricao\": \"debito\"}".formatted(random.nextInt(1, 10_000)));
+        }
+        if (kind < 95) {
+            return exchange(report, "statement", client.get().uri("/clientes/{accountId}/extrato", accountId));
+        }
+        if (kind < 98) {
+            return post(report, "invalid", accountId, INVALID_PAYLOADS[random.nextInt(INVALID_PAYLOADS.length)]);
+        }
+        return post(report, "invalid", ACCOUNTS + 1, "{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"inexistente\"}");
+    }
+
+    private Mono<Void> post(Report report, String endpoint, int accountId, String body) {
+        return exchange(report, endpoint, client.post()
+                .uri("/clientes/{accountId}/transacoes", accountId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body));
+    }
+
+    private Mono<Void> exchange(Report report, String endpoint, WebClient.RequestHeadersSpec<?> request) {
+        return Mono.defer(() -> {
+            var start = System.nanoTime();
+            return request.exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().value()))
+                    .timeout(Duration.ofSeconds(10))
+                    .onErrorReturn(-1)
+                    .doOnNext(status -> report.record(endpoint, status, System.nanoTime() - start))
+                    .then();
+        });
+    }
+
+    public static class Report {
+        private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+        private final Map<String, Map<Integer, AtomicLong>> statuses = new ConcurrentHashMap<>();
+        private final AtomicLong droppedTicks = new AtomicLong();
+
+        void record(String endpoint, int status, long nanos) {
+            latencies.computeIfAbsent(endpoint, key -> new ConcurrentHistogram(3)).recordValue(nanos);
+            statuses.computeIfAbsent(endpoint, key -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(status, key -> new AtomicLong())
+                    .incrementAndGet();
+        }
+
+        public long count(String endpoint, int status) {
+            var counts = statuses.getOrDefault(endpoint, Map.of());
+            var count = counts.get(status);
+            return count == null ? 0 : count.get();
+        }
+
+        public long count(String endpoint) {
+            return statuses.getOrDefault(endpoint, Map.of()).values().stream().mapToLong(AtomicLong::get).sum();
+        }
+
+        public Map<Integer, Long> statuses() {
+            var all = new TreeMap<Integer, Long>();
+            statuses.values().forEach(counts -> counts.forEach((status, count) -> all.merge(status, count.get(), Long::sum)));
+            return all;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%-10s %8s %10s %10s %10s %10s  %s%n", "endpoint", "count", "p50(ms)", "p99(ms)", "p99.9(ms)", "max(ms)", "statuses");
+            new TreeMap<>(latencies).forEach((endpoint, histogram) -> out.printf("%-10s %8d %10.2f %10.2f %10.2f %10.2f  %s%n",
+                    endpoint,
+                    histogram.getTotalCount(),
+                    histogram.getValueAtPercentile(50) / 1e6,
+                    histogram.getValueAtPercentile(99) / 1e6,
+                    histogram.getValueAtPercentile(99.9) / 1e6,
+                    histogram.getMaxValue() / 1e6,
+                    new TreeMap<>(statuses.get(endpoint))));
+            if (droppedTicks.get() > 0) {
+                out.printf("dropped ticks (generator could not keep the rate): %d%n", droppedTicks.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.rinha;
+
+import com.example.rinha.model.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecentTransactionsTests {
+    private static final int ACCOUNT_ID = 1;
+
+    private final RecentTransactions recentTransactions = new RecentTransactions(true);
+
+    @Test
+    void answersOnlyOnceSeeded() {
+        recentTransactions.add(transaction(1));
+
+        assertThat(recentTransactions.find(ACCOUNT_ID)).isEmpty();
+
+        recentTransactions.seed(ACCOUNT_ID, List.of());
+
+        assertThat(recentTransactions.find(ACCOUNT_ID)).hasValueSatisfying(found -> assertThat(dates(found)).containsExactly(1L));
+    }
+
+    @Test
+    void keepsTheLastTenNewestFirstWhenAddsAndSeedInterleave() {
+        // accepted while the statement read was in flight, so the seed overlaps them
+        IntStream.rangeClosed(8, 12).forEach(date -> recentTransactions.add(transaction(date)));
+        recentTransactions.seed(ACCOUNT_ID, IntStream.rangeClosed(0, 10).mapToObj(RecentTransactionsTests::transaction).toList());
+        IntStream.rangeClosed(13, 15).forEach(date -> recentTransactions.add(transaction(date)));
+
+        assertThat(recentTransactions.find(ACCOUNT_ID))
+                .hasValueSatisfying(found -> assertThat(dates(found)).containsExactly(15L, 14L, 13L, 12L, 11L, 10L, 9L, 8L, 7L, 6L));
+    }
+
+    @Test
+    void ignoresATransactionWithADateAlreadyPresent() {
+        recentTransactions.seed(ACCOUNT_ID, List.of(transaction(1), transaction(2)));
+        recentTransactions.add(new Transaction(ACCOUNT_ID, "d", "repetida", Instant.ofEpochMilli(2), 1, 2L));
+
+        assertThat(recentTransactions.find(ACCOUNT_ID)).hasValueSatisfying(found -> {
+            assertThat(dates(found)).containsExactly(2L, 1L);
+            assertThat(found.get(0).description()).isEqualTo("teste");
+        });
+    }
+
+    @Test
+    void ignoresATransactionOlderThanEveryEntryOfAFullRing() {
+        recentTransactions.seed(ACCOUNT_ID, IntStream.rangeClosed(11, 20).mapToObj(RecentTransactionsTests::transaction).toList());
+        recentTransactions.add(transaction(5));
+        recentTransactions.add(transaction(21));
+
+        assertThat(recentTransactions.find(ACCOUNT_ID))
+                .hasValueSatisfying(found -> assertThat(dates(found)).containsExactly(21L, 20L, 19L, 18L, 17L, 16L, 15L, 14L, 13L, 12L));
+    }
+
+    @Test
+    void seedsOnlyOnce() {
+        recentTransactions.seed(ACCOUNT_ID, List.of(transaction(1)));
+        recentTransactions.seed(ACCOUNT_ID, List.of(transaction(2)));
+
+        assertThat(recentTransactions.find(ACCOUNT_ID)).hasValueSatisfying(found -> assertThat(dates(found)).containsExactly(1L));
+    }
+
+    @Test
+    void neverAnswersWhenDisabled() {
+        var disabled = new RecentTransactions(false);
+        disabled.add(transaction(1));
+        disabled.seed(ACCOUNT_ID, List.of(transaction(1)));
+
+        assertThat(disabled.find(ACCOUNT_ID)).isEmpty();
+    }
+
+    private static Transaction transaction(long dateMillis) {
+        return new Transaction(ACCOUNT_ID, "c", "teste", Instant.ofEpochMilli(dateMillis), 1, dateMillis);
+    }
+
+    private static List<Long> dates(List<Transaction> transactions) {
+        return transactions.stream().map(Transaction::dateMillis).toList();
+    }
+}
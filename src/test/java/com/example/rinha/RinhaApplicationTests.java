@@ -1,6 +1,7 @@
 package com.example.rinha;
 
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
 import com.example.rinha.dto.BalanceResponse;
 import com.example.rinha.dto.TransactionRequest;
 import com.example.rinha.dto.TransactionResponse;
@@ -11,7 +12,9 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.testcontainers.containers.CassandraContainer;
@@ -21,6 +24,9 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.IntStream;
@@ -30,12 +36,13 @@ import static org.awaitility.Awaitility.await;
 import static org.hamcrest.Matchers.equalTo;
 import static org.springframework.web.reactive.function.BodyInserters.fromValue;
 
-@SpringBootTest(properties = {
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
         "spring.cassandra.keyspace-name=rinha",
         "logging.level.org.springframework.web=trace",
         "logging.level.com.example.rinha=trace",
         "server.error.include-message=always",
-        "server.error.include-exception=true"
+        "server.error.include-exception=true",
+        "rinha.idempotency.enabled=true"
 })
 @AutoConfigureWebTestClient(timeout = "1s")
 @Testcontainers
@@ -46,6 +53,12 @@ class RinhaApplicationTests {
     ObjectMapper objectMapper;
     @Autowired
     CqlSession session;
+    @Autowired
+    RecentTransactions recentTransactions;
+    @Autowired
+    BalanceSnapshots balanceSnapshots;
+    @LocalServerPort
+    int port;
 
     @Container
     @ServiceConnection
@@ -56,6 +69,8 @@ class RinhaApplicationTests {
     void tearDown() {
         session.execute("TRUNCATE rinha.transactions");
         session.execute("TRUNCATE rinha.accounts_balance");
+        session.execute("TRUNCATE rinha.balance_snapshots");
+        recentTransactions.clear();
 
         session.execute("UPDATE rinha.accounts_balance SET total = total + 0 WHERE accountId = 1");
         session.execute("UPDATE rinha.accounts_balance SET total = total + 0 WHERE accountId = 2");
@@ -66,13 +81,13 @@ class RinhaApplicationTests {
 
     @Test
     void contextLoads() throws Exception {
-        client.get().uri("/health")
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> client.get().uri("/health")
                 .exchange()
                 .expectStatus().isOk()
                 .expectHeader()
                 .contentType(MediaType.APPLICATION_JSON)
                 .expectBody()
-                .jsonPath("$.status").value(equalTo("UP"));
+                .jsonPath("$.status").value(equalTo("UP")));
 
         client.post().uri("/clientes/1/transacoes")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -261,4 +276,121 @@ class RinhaApplicationTests {
         });
     }
 
+    @Test
+    void testBalanceIsRebuiltFromTheLatestSnapshot() {
+        post(3, "{\"valor\": 100, \"tipo\": \"c\", \"descricao\": \"antes\"}");
+        post(3, "{\"valor\": 30, \"tipo\": \"d\", \"descricao\": \"antes\"}");
+
+        assertThat(balanceSnapshots.compact(3, System.currentTimeMillis() + 1).block()).isEqualTo(70L);
+
+        post(3, "{\"valor\": 5, \"tipo\": \"d\", \"descricao\": \"depois\"}");
+
+        assertThat(balanceSnapshots.rebuild(3).block()).isEqualTo(65L);
+    }
+
+    @Test
+    void testIdempotencyKeyReplaysTheOriginalResponse() {
+        var idempotencyKey = UUID.randomUUID().toString();
+        var responses = IntStream.range(0, 3).mapToObj(i -> client.post().uri("/clientes/2/transacoes")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(IdempotencyCache.HEADER, idempotencyKey)
+                        .body(fromValue("{\"valor\": 10, \"tipo\": \"c\", \"descricao\": \"repetida\"}"))
+                        .exchange()
+                        .expectStatus().isOk()
+                        .expectBody(TransactionResponse.class)
+                        .returnResult()
+                        .getResponseBody())
+                .toList();
+
+        assertThat(responses).containsOnly(new TransactionResponse(80000, 10L));
+
+        client.post().uri("/clientes/2/transacoes")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(IdempotencyCache.HEADER, idempotencyKey)
+                .body(fromValue("{\"valor\": 20, \"tipo\": \"c\", \"descricao\": \"outra\"}"))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+
+        client.get().uri("/clientes/2/extrato")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.saldo.total").value(equalTo(10))
+                .jsonPath("$.ultimas_transacoes.length()").value(equalTo(1));
+    }
+
+    @Test
+    void testLimitRuleFollowsTheSpecification() {
+        // expected statuses come from the rule of the specification, a debit may take the balance down to -limite
+        var limit = 100000;
+        var random = new Random(42);
+        var balance = 0L;
+        for (int i = 0; i < 300; i++) {
+            var type = i == 1 || random.nextInt(5) < 3 ? "d" : "c";
+            var amount = i == 0 ? 1000 : i == 1 ? limit + 500 : 1 + random.nextInt(limit + limit / 2);
+            var accepted = type.equals("c") || balance - amount >= -limit;
+            client.post().uri("/clientes/1/transacoes")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(fromValue("{\"valor\": %d, \"tipo\": \"%s\", \"descricao\": \"regra\"}".formatted(amount, type)))
+                    .exchange()
+                    .expectStatus().isEqualTo(accepted ? HttpStatus.OK : HttpStatus.UNPROCESSABLE_ENTITY);
+            if (accepted) {
+                balance += type.equals("c") ? amount : -amount;
+            }
+        }
+
+        client.get().uri("/clientes/1/extrato")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.saldo.total").value(equalTo((int) balance));
+    }
+
+    @Test
+    void testBalanceInvariantsUnderLoad() {
+        var baseUrl = System.getProperty("rinha.load.base-url", "http://localhost:" + port);
+        var report = new LoadGenerator(baseUrl,
+                Integer.getInteger("rinha.load.rps", 100),
+                Integer.getInteger("rinha.load.concurrency", 32),
+                Duration.ofSeconds(Long.getLong("rinha.load.duration", 5)))
+                .run();
+        report.print(System.out);
+
+        // 503 is the load shedder answering with Retry-After, anything else above 499 is a failure
+        assertThat(report.statuses()).allSatisfy((status, count) -> assertThat(status >= 200 && status < 500 || status == 503)
+                .as("status %d", status)
+                .isTrue());
+        assertThat(report.count("invalid", 200)).isZero();
+
+        IntStream.rangeClosed(1, LoadGenerator.ACCOUNTS).forEach(accountId -> await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+            var balance = session.execute("SELECT total FROM rinha.accounts_balance WHERE accountId = ?", accountId).one();
+            var total = balance == null ? 0L : balance.getLong("total");
+            var transactions = session.execute("SELECT type, amount FROM rinha.transactions WHERE accountId = ?", accountId).all().stream()
+                    .mapToLong(this::signedAmount)
+                    .sum();
+            var statement = client.get().uri("/clientes/{accountId}/extrato", accountId)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .expectBody(Map.class)
+                    .returnResult()
+                    .getResponseBody();
+            assertThat(statement).isNotNull();
+            var limit = ((Number) ((Map<?, ?>) statement.get("saldo")).get("limite")).longValue();
+
+            assertThat(total).as("balance of account %d", accountId).isEqualTo(transactions);
+            assertThat(total).as("balance of account %d within its limit", accountId).isGreaterThanOrEqualTo(-limit);
+        }));
+    }
+
+    private long signedAmount(Row row) {
+        return "d".equals(row.getString("type")) ? -row.getInt("amount") : row.getInt("amount");
+    }
+
+    private void post(int accountId, String body) {
+        client.post().uri("/clientes/{accountId}/transacoes", accountId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(fromValue(body))
+                .exchange()
+                .expectStatus().isOk();
+    }
 }
@@ -0,0 +1,34 @@
+package com.example.rinha;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RinhaHandlerTests {
+
+    @ParameterizedTest
+    @CsvSource({
+            // value, expected (Integer.MIN_VALUE marks an invalid id)
+            "1, 1",
+            "+1, 1",
+            "-1, -1",
+            "0, 0",
+            "007, 7",
+            "2147483647, 2147483647",
+            "-2147483647, -2147483647",
+            "'', -2147483648",
+            "+, -2147483648",
+            "-, -2147483648",
+            "2147483648, -2147483648",
+            "-2147483648, -2147483648",
+            "99999999999, -2147483648",
+            "1a, -2147483648",
+            "a1, -2147483648",
+            "' 1', -2147483648",
+            "+-1, -2147483648"
+    })
+    void parsesAccountIdsLikeIntegerParseInt(String value, int expected) {
+        assertThat(RinhaHandler.parseAccountId(value)).isEqualTo(expected);
+    }
+}
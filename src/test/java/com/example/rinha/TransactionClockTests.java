@@ -0,0 +1,57 @@
+package com.example.rinha;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransactionClockTests {
+    private final TransactionClock clock = new TransactionClock();
+
+    @Test
+    void datesOfOneAccountAreStrictlyIncreasing() {
+        var previous = clock.next(1);
+        for (int i = 0; i < 10_000; i++) {
+            var next = clock.next(1);
+            assertThat(next).isAfter(previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void datesFollowTheWallClockWhenItIsAhead() throws InterruptedException {
+        clock.next(1);
+        var before = System.currentTimeMillis();
+        Thread.sleep(5);
+
+        assertThat(clock.next(1).toEpochMilli()).isGreaterThan(before);
+    }
+
+    @Test
+    void accountsDoNotShareTheirSequence() {
+        IntStream.range(0, 1000).forEach(i -> clock.next(1));
+
+        assertThat(clock.next(2).toEpochMilli()).isLessThanOrEqualTo(System.currentTimeMillis());
+    }
+
+    @Test
+    void concurrentCallsNeverHandOutTheSameDate() throws Exception {
+        var dates = ConcurrentHashMap.<Instant>newKeySet();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> tasks = IntStream.range(0, 8)
+                    .<Future<?>>mapToObj(thread -> executor.submit(() -> IntStream.range(0, 1000).forEach(i -> dates.add(clock.next(1)))))
+                    .toList();
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        }
+
+        assertThat(dates).hasSize(8000);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.rinha.codec;
+
+import com.example.rinha.BusinessException;
+import com.example.rinha.dto.BalanceResponse;
+import com.example.rinha.dto.TransactionRequest;
+import com.example.rinha.dto.TransactionResponse;
+import com.example.rinha.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RinhaJsonCodecTests {
+    private final TransactionRequestDecoder decoder = new TransactionRequestDecoder();
+    private final RinhaJsonEncoder encoder = new RinhaJsonEncoder();
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void decodeValidRequest() {
+        var request = decode("{ \"valor\": 1000, \"descricao\" : \"descri\\u00e7\\\"o\", \"extra\": {\"a\": [1, 2.5, null]}, \"tipo\": \"d\" }");
+
+        assertThat(request).isEqualTo(new TransactionRequest(1000, "d", "descriç\"o"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "{}",
+            "{\"valor\": 1.2, \"tipo\": \"d\", \"descricao\": \"devolve\"}",
+            "{\"valor\": 1e2, \"tipo\": \"d\", \"descricao\": \"devolve\"}",
+            "{\"valor\": -10, \"tipo\": \"c\", \"descricao\": \"devolve\"}",
+            "{\"valor\": null, \"tipo\": \"c\", \"descricao\": \"devolve\"}",
+            "{\"valor\": \"1\", \"tipo\": \"c\", \"descricao\": \"devolve\"}",
+            "{\"valor\": 99999999999, \"tipo\": \"c\", \"descricao\": \"devolve\"}",
+            "{\"valor\": 1, \"tipo\": \"x\", \"descricao\": \"devolve\"}",
+            "{\"valor\": 1, \"tipo\": null, \"descricao\": \"devolve\"}",
+            "{\"valor\": 1, \"descricao\": \"devolve\"}",
+            "{\"tipo\": \"c\", \"descricao\": \"devolve\"}",
+            "{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"123456789 e mais um pouco\"}",
+            "{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"\"}",
+            "{\"valor\": 1, \"tipo\": \"c\", \"descricao\": null}",
+            "{\"valor\": 1, \"tipo\": \"c\"}",
+            "{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"devolve\"",
+            "{\"valor\": 1, \"tipo\": \"c\", \"descricao\": \"devolve\"} trailing"
+    })
+    void rejectInvalidRequest(String body) {
+        assertThatThrownBy(() -> decode(body)).isInstanceOf(BusinessException.class);
+    }
+
+    @Test
+    void encodeTransactionResponse() throws Exception {
+        var json = encode(new TransactionResponse(100000, -9098L));
+
+        assertThat(json).isEqualTo("{\"limite\":100000,\"saldo\":-9098}");
+        assertThat(objectMapper.readValue(json, TransactionResponse.class)).isEqualTo(new TransactionResponse(100000, -9098L));
+    }
+
+    @Test
+    void encodeBalanceResponse() throws Exception {
+        var date = Instant.parse("2024-01-17T02:34:38.543Z");
+        var transactions = List.of(
+                new Transaction(1, "c", "tchê \"x\"", date, 10, date.toEpochMilli()),
+                new Transaction(1, "d", "danada", Instant.parse("1999-12-31T23:59:59Z"), 90000, null));
+        var response = new BalanceResponse(new BalanceResponse.Balance(-89990L, date, 100000), transactions);
+
+        var json = encode(response);
+
+        assertThat(json).isEqualTo("{\"saldo\":{\"total\":-89990,\"data_extrato\":\"2024-01-17T02:34:38.543Z\",\"limite\":100000},"
+                + "\"ultimas_transacoes\":[{\"tipo\":\"c\",\"descricao\":\"tchê \\\"x\\\"\",\"realizada_em\":\"2024-01-17T02:34:38.543Z\",\"valor\":10},"
+                + "{\"tipo\":\"d\",\"descricao\":\"danada\",\"realizada_em\":\"1999-12-31T23:59:59.000Z\",\"valor\":90000}]}");
+        assertThat(objectMapper.readValue(json, BalanceResponse.class).lastTransactions())
+                .extracting(Transaction::date)
+                .containsExactly(date, Instant.parse("1999-12-31T23:59:59Z"));
+    }
+
+    private TransactionRequest decode(String body) {
+        var buffer = DefaultDataBufferFactory.sharedInstance.wrap(body.getBytes(StandardCharsets.UTF_8));
+        return decoder.decode(buffer, ResolvableType.forClass(TransactionRequest.class), MediaType.APPLICATION_JSON, Map.of());
+    }
+
+    private String encode(Object value) {
+        DataBuffer buffer = encoder.encodeValue(value, DefaultDataBufferFactory.sharedInstance,
+                ResolvableType.forInstance(value), MediaType.APPLICATION_JSON, Map.of());
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+}